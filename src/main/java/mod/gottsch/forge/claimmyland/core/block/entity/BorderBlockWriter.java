@@ -0,0 +1,180 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.block.entity;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerChunkCache;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.levelgen.Heightmap;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * batches the block writes of a border by chunk section.
+ * on flush, the states are written directly into the sections. the heightmaps, lighting and saving of the chunk
+ * are kept in step, and the changes are sent by the chunk holder as one section update per section at the end of the tick.
+ * the neighbour shape updates and notifications of Level.setBlock are done in one pass after all the sections
+ * are written, so that ex. a fence connects to a placed border block, and water next to a removed one flows into the gap.
+ * the direct write skips the onRemove/onPlace of the old and new blocks. border blocks don't use them,
+ * but a replaced block might, so the write is not equivalent to setBlock in general: blocks with a block entity
+ * still go through setBlock.
+ */
+public class BorderBlockWriter {
+    // a write with an expected state only replaces that state
+    private record Write(BlockPos pos, @Nullable BlockState expected, BlockState state) {}
+    private record Written(BlockPos pos, BlockState oldState, BlockState state) {}
+
+    // the recursion left for the shape updates, as Level.setBlock
+    private static final int UPDATE_LIMIT = 511;
+
+    private final Level level;
+    private final Block removeBlock;
+    // keyed by section pos, in insertion order
+    private final Long2ObjectLinkedOpenHashMap<List<Write>> sections = new Long2ObjectLinkedOpenHashMap<>();
+
+    /**
+     *
+     * @param level
+     * @param removeBlock the block that can be replaced, in addition to the border and replaceable blocks
+     */
+    public BorderBlockWriter(Level level, Block removeBlock) {
+        this.level = level;
+        this.removeBlock = removeBlock;
+    }
+
+    /**
+     * queues the state at the pos
+     * @param pos
+     * @param state
+     */
+    public void set(BlockPos pos, BlockState state) {
+        add(new Write(pos, null, state));
+    }
+
+    /**
+     * queues the state at the pos, if the pos still has the expected state
+     * @param pos
+     * @param expected
+     * @param state
+     */
+    public void replace(BlockPos pos, BlockState expected, BlockState state) {
+        add(new Write(pos, expected, state));
+    }
+
+    private void add(Write write) {
+        sections.computeIfAbsent(SectionPos.asLong(write.pos()), k -> new ObjectArrayList<>()).add(write);
+    }
+
+    public boolean isEmpty() {
+        return sections.isEmpty();
+    }
+
+    /**
+     * writes the queued states
+     */
+    public void flush() {
+        if (!(level instanceof ServerLevel serverLevel)) {
+            // the client doesn't send updates, so the states are set as before
+            sections.values().forEach(writes -> writes.forEach(write -> {
+                if (write.expected() == null) {
+                    BorderStoneBlockEntity.replaceParcelBorderBlock(level, write.pos(), removeBlock, write.state());
+                } else if (level.getBlockState(write.pos()) == write.expected()) {
+                    level.setBlockAndUpdate(write.pos(), write.state());
+                }
+            }));
+            sections.clear();
+            return;
+        }
+
+        ServerChunkCache chunkSource = serverLevel.getChunkSource();
+        List<Written> updated = new ObjectArrayList<>();
+        for (Long2ObjectMap.Entry<List<Write>> entry : sections.long2ObjectEntrySet()) {
+            SectionPos sectionPos = SectionPos.of(entry.getLongKey());
+            LevelChunk chunk = serverLevel.getChunk(sectionPos.x(), sectionPos.z());
+            int index = chunk.getSectionIndexFromSectionY(sectionPos.y());
+            if (index < 0 || index >= chunk.getSectionsCount()) {
+                // outside the build height
+                continue;
+            }
+            LevelChunkSection section = chunk.getSection(index);
+            boolean wasEmpty = section.hasOnlyAir();
+            boolean changed = false;
+
+            for (Write write : entry.getValue()) {
+                BlockPos pos = write.pos();
+                int x = pos.getX() & 15;
+                int y = pos.getY() & 15;
+                int z = pos.getZ() & 15;
+                BlockState oldState = section.getBlockState(x, y, z);
+                if (oldState == write.state() || (write.expected() != null ? oldState != write.expected()
+                        : !BorderStoneBlockEntity.canReplace(oldState, removeBlock))) {
+                    continue;
+                }
+                if (oldState.hasBlockEntity()) {
+                    // the block entity has to be removed by the chunk
+                    serverLevel.setBlockAndUpdate(pos, write.state());
+                    continue;
+                }
+                section.setBlockState(x, y, z, write.state(), false);
+                for (Map.Entry<Heightmap.Types, Heightmap> heightmap : chunk.getHeightmaps()) {
+                    heightmap.getValue().update(x, pos.getY(), z, write.state());
+                }
+                if (oldState.getLightBlock(serverLevel, pos) != write.state().getLightBlock(serverLevel, pos)
+                        || oldState.getLightEmission(serverLevel, pos) != write.state().getLightEmission(serverLevel, pos)
+                        || oldState.useShapeForLightOcclusion() || write.state().useShapeForLightOcclusion()) {
+                    chunkSource.getLightEngine().checkBlock(pos);
+                }
+                serverLevel.onBlockStateChange(pos, oldState, write.state());
+                // batched by the chunk holder into a section update
+                chunkSource.blockChanged(pos);
+                updated.add(new Written(pos, oldState, write.state()));
+                changed = true;
+            }
+
+            if (changed) {
+                if (wasEmpty != section.hasOnlyAir()) {
+                    chunkSource.getLightEngine().updateSectionStatus(sectionPos, section.hasOnlyAir());
+                }
+                chunk.setUnsaved(true);
+            }
+        }
+        sections.clear();
+
+        // deferred neighbor updates, once all the states are in place. the same updates as Level.setBlock
+        // with UPDATE_ALL, except that the clients already receive the states by the section updates.
+        for (Written write : updated) {
+            serverLevel.blockUpdated(write.pos(), write.state().getBlock());
+            write.oldState().updateIndirectNeighbourShapes(serverLevel, write.pos(), Block.UPDATE_CLIENTS, UPDATE_LIMIT);
+            write.state().updateNeighbourShapes(serverLevel, write.pos(), Block.UPDATE_CLIENTS, UPDATE_LIMIT);
+            write.state().updateIndirectNeighbourShapes(serverLevel, write.pos(), Block.UPDATE_CLIENTS, UPDATE_LIMIT);
+        }
+    }
+}
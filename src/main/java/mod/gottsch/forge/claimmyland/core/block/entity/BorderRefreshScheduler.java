@@ -0,0 +1,188 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.block.entity;
+
+import it.unimi.dsi.fastutil.objects.Reference2LongOpenHashMap;
+import mod.gottsch.forge.claimmyland.ClaimMyLand;
+import mod.gottsch.forge.claimmyland.core.config.ConfigSnapshot;
+import net.minecraft.server.MinecraftServer;
+
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+
+/**
+ * schedules the border refreshes of all the loaded border stones, in place of each stone
+ * refreshing on gameTime % ticksPerBorderStoneRefresh (ie. all the stones in the same tick).
+ * a stone is given a phase within the refresh period when it is added, from a low-discrepancy sequence,
+ * so the refreshes are spread evenly across the period. the refreshes that are due are run each tick
+ * until the tick budget is spent, and the rest are carried over to the next tick.
+ * only accessed on the server thread.
+ */
+public final class BorderRefreshScheduler {
+    // the fractional part of the golden ratio
+    private static final double PHASE_STEP = 0.6180339887498949;
+
+    private record Scheduled(BorderStoneBlockEntity entity, long time) {}
+
+    // the next refresh time of each stone. a queued refresh that no longer matches is stale.
+    private static final Reference2LongOpenHashMap<BorderStoneBlockEntity> NEXT_REFRESH = new Reference2LongOpenHashMap<>();
+    private static final PriorityQueue<Scheduled> SCHEDULE = new PriorityQueue<>((a, b) -> Long.compare(a.time(), b.time()));
+    // the refreshes that are due, in order
+    private static final ArrayDeque<Scheduled> DUE = new ArrayDeque<>();
+
+    private static double phase;
+
+    /*
+     * metrics
+     */
+    private static long lastTickNanos;
+    private static long maxTickNanos;
+    private static int lastTickRefreshes;
+    private static long totalRefreshes;
+
+    private BorderRefreshScheduler() {}
+
+    /**
+     * schedules the refreshes of the stone
+     * @param entity
+     * @param gameTime the current game time
+     */
+    public static void add(BorderStoneBlockEntity entity, long gameTime) {
+        if (NEXT_REFRESH.containsKey(entity)) {
+            return;
+        }
+        long period = ConfigSnapshot.get().ticksPerBorderStoneRefresh;
+        phase = (phase + PHASE_STEP) % 1.0;
+        schedule(entity, gameTime + 1 + (long) (phase * period));
+    }
+
+    /**
+     * stops the refreshes of the stone ie. when it is removed or unloaded
+     * @param entity
+     */
+    public static void remove(BorderStoneBlockEntity entity) {
+        // the queued refreshes are dropped when they are reached
+        NEXT_REFRESH.removeLong(entity);
+    }
+
+    private static void schedule(BorderStoneBlockEntity entity, long time) {
+        NEXT_REFRESH.put(entity, time);
+        SCHEDULE.add(new Scheduled(entity, time));
+    }
+
+    /**
+     * runs the due refreshes, within the tick budget. called at the end of the server tick.
+     * @param server
+     */
+    public static void tick(MinecraftServer server) {
+        if (NEXT_REFRESH.isEmpty()) {
+            SCHEDULE.clear();
+            DUE.clear();
+            lastTickNanos = 0;
+            lastTickRefreshes = 0;
+            return;
+        }
+        ConfigSnapshot config = ConfigSnapshot.get();
+        // the overworld's game time is shared by all dimensions
+        long gameTime = server.overworld().getGameTime();
+        while (!SCHEDULE.isEmpty() && SCHEDULE.peek().time() <= gameTime) {
+            DUE.add(SCHEDULE.poll());
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + config.borderRefreshBudgetNanos;
+        int refreshes = 0;
+        // at least one refresh per tick, so the queue always progresses
+        while (!DUE.isEmpty() && (refreshes == 0 || System.nanoTime() < deadline)) {
+            Scheduled scheduled = DUE.poll();
+            BorderStoneBlockEntity entity = scheduled.entity();
+            if (!NEXT_REFRESH.containsKey(entity) || NEXT_REFRESH.getLong(entity) != scheduled.time()) {
+                // stale
+                continue;
+            }
+            if (entity.isRemoved() || entity.getLevel() == null) {
+                NEXT_REFRESH.removeLong(entity);
+                continue;
+            }
+            try {
+                entity.refreshParcelBorder();
+            } catch (Exception e) {
+                ClaimMyLand.LOGGER.error("unable to refresh the border @ {}", entity.getBlockPos(), e);
+            }
+            refreshes++;
+            // the next refresh is a period after this one was due, so a late refresh keeps its phase
+            if (NEXT_REFRESH.containsKey(entity)) {
+                schedule(entity, Math.max(gameTime + 1, scheduled.time() + config.ticksPerBorderStoneRefresh));
+            }
+        }
+
+        lastTickNanos = System.nanoTime() - start;
+        maxTickNanos = Math.max(maxTickNanos, lastTickNanos);
+        lastTickRefreshes = refreshes;
+        totalRefreshes += refreshes;
+    }
+
+    /**
+     * the number of stones with scheduled refreshes
+     * @return
+     */
+    public static int getScheduledCount() {
+        return NEXT_REFRESH.size();
+    }
+
+    /**
+     * the number of refreshes that are due, but have been carried over to the next tick
+     * @return
+     */
+    public static int getQueueDepth() {
+        return DUE.size();
+    }
+
+    public static long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    public static long getMaxTickNanos() {
+        return maxTickNanos;
+    }
+
+    public static int getLastTickRefreshes() {
+        return lastTickRefreshes;
+    }
+
+    public static long getTotalRefreshes() {
+        return totalRefreshes;
+    }
+
+    public static void resetMaxTickNanos() {
+        maxTickNanos = 0;
+    }
+
+    public static void clear() {
+        NEXT_REFRESH.clear();
+        SCHEDULE.clear();
+        DUE.clear();
+        phase = 0;
+        lastTickNanos = 0;
+        maxTickNanos = 0;
+        lastTickRefreshes = 0;
+        totalRefreshes = 0;
+    }
+}
@@ -19,10 +19,16 @@
  */
 package mod.gottsch.forge.claimmyland.core.block.entity;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import mod.gottsch.forge.claimmyland.ClaimMyLand;
 import mod.gottsch.forge.claimmyland.core.block.*;
-import mod.gottsch.forge.claimmyland.core.config.Config;
+import mod.gottsch.forge.claimmyland.core.config.ConfigSnapshot;
 import mod.gottsch.forge.claimmyland.core.item.Deed;
+import mod.gottsch.forge.claimmyland.core.network.ParcelOutlines;
 import mod.gottsch.forge.claimmyland.core.parcel.NationParcel;
 import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
 import mod.gottsch.forge.claimmyland.core.parcel.ParcelType;
@@ -37,6 +43,7 @@ import net.minecraft.core.Direction;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.network.Connection;
 import net.minecraft.network.protocol.game.ClientboundBlockEntityDataPacket;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.Blocks;
@@ -47,9 +54,11 @@ import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.BiConsumer;
 
 /**
  * Created by Mark Gottschling on Sep 18, 2024
@@ -90,6 +99,32 @@ public class BorderStoneBlockEntity extends BlockEntity {
     //
     private long expireTime;
 
+    /*
+     * the border placed by the last refresh, by packed pos. not saved, so the first refresh
+     * after a load writes the whole border.
+     */
+    private Long2ObjectOpenHashMap<BlockState> placedBorder = new Long2ObjectOpenHashMap<>();
+    // the boxes of the placed border. when unchanged, the border is not recomputed
+    private final List<BorderBox> placedBoxes = new ArrayList<>(2);
+    // the boxes of the refresh in progress
+    private final List<BorderBox> pendingBoxes = new ArrayList<>(2);
+    // true while the placed border is known to be in the world ie. none of its chunks have been loaded,
+    // and none of its positions changed, since it was last verified (see BorderTracker)
+    private boolean placedBorderVerified;
+
+    /**
+     * a border box and the state of its border blocks
+     */
+    private record BorderBox(long min, long max, BlockState state) {
+        BorderBox(Box box, BlockState state) {
+            this(box.getMinCoords().toPos().asLong(), box.getMaxCoords().toPos().asLong(), state);
+        }
+
+        Box toBox() {
+            return new Box(Coords.of(BlockPos.of(min)), Coords.of(BlockPos.of(max)));
+        }
+    }
+
     public BorderStoneBlockEntity(BlockPos pos, BlockState state) {
         super(ModBlockEntities.BORDER_STONE_ENTITY_TYPE.get(), pos, state);
     }
@@ -98,21 +133,58 @@ public class BorderStoneBlockEntity extends BlockEntity {
         super(type, pos, state);
     }
 
+    @Override
+    public void onLoad() {
+        super.onLoad();
+        // the borders are refreshed by the scheduler, spread across the refresh period
+        if (getLevel() != null && !getLevel().isClientSide() && isRefreshed()) {
+            BorderRefreshScheduler.add(this, getLevel().getGameTime());
+        }
+    }
+
+    @Override
+    public void setRemoved() {
+        super.setRemoved();
+        if (getLevel() != null && !getLevel().isClientSide()) {
+            BorderRefreshScheduler.remove(this);
+            BorderTracker.untrack(this);
+        }
+    }
+
+    @Override
+    public void onChunkUnloaded() {
+        super.onChunkUnloaded();
+        if (getLevel() != null && !getLevel().isClientSide()) {
+            BorderRefreshScheduler.remove(this);
+            BorderTracker.untrack(this);
+        }
+    }
+
     /**
-     *
+     * true if the borders are refreshed periodically ie. they are displayed until the stone expires
+     * @return
      */
-    public void tickServer() {
-        // refresh the borders
-        if (getLevel().getGameTime() % Config.SERVER.borders.ticksPerBorderStoneRefresh.get() == 0) {
-            // determine if a parcel still exits at this location
-            if (getParcelId() != null && ParcelRegistry.findByParcelId(getParcelId()).isPresent()) {
-                placeParcelBorder();
-            } else {
-                setParcelId(null);
-                setExpireTime(0L);
-            }
+    protected boolean isRefreshed() {
+        return true;
+    }
+
+    /**
+     * refreshes the borders. called by the BorderRefreshScheduler.
+     */
+    public void refreshParcelBorder() {
+        // determine if a parcel still exits at this location
+        if (getParcelId() != null && ParcelRegistry.findByParcelId(getParcelId()).isPresent()) {
+            placeParcelBorder();
+        } else {
+            setParcelId(null);
+            setExpireTime(0L);
         }
+    }
 
+    /**
+     *
+     */
+    public void tickServer() {
         if (getLevel().getGameTime() > getExpireTime()) {
             // remove border
             removeParcelBorder(getLevel(), getCoords());
@@ -156,8 +228,8 @@ public class BorderStoneBlockEntity extends BlockEntity {
     public int getBufferSize(ParcelType parcelType) {
 //        ParcelType parcelType = getParcelType() != null ? ParcelType.valueOf(getParcelType()) : ParcelType.PLAYER;
         return switch (parcelType) {
-            case PLAYER, CITIZEN -> Config.SERVER.general.parcelBufferRadius.get();
-            case NATION -> Config.SERVER.general.nationParcelBufferRadius.get();
+            case PLAYER, CITIZEN -> ConfigSnapshot.get().parcelBufferRadius;
+            case NATION -> ConfigSnapshot.get().nationParcelBufferRadius;
             case ZONE -> 0;
         };
     }
@@ -226,6 +298,14 @@ public class BorderStoneBlockEntity extends BlockEntity {
         return box;
     }
 
+    /**
+     * true if the borders are displayed as client rendered outlines instead of border blocks
+     * @return
+     */
+    public static boolean isOutlineMode() {
+        return ConfigSnapshot.get().borderDisplayMode == BorderDisplayMode.OUTLINE;
+    }
+
     /*
      * border cud operations
      */
@@ -258,11 +338,111 @@ public class BorderStoneBlockEntity extends BlockEntity {
             BlockState bufferState = getBufferBlockState(box, bufferedBox);
             placeParcelBorder(bufferedBox, bufferState);
         }
+        applyParcelBorder();
     }
 
+    /**
+     * adds the box to the border of the refresh in progress. the border is placed by applyParcelBorder().
+     * @param box
+     * @param state
+     */
     public void placeParcelBorder(Box box, BlockState state) {
+        if (isOutlineMode()) {
+            // the client renders the outline, the world is not modified
+            ParcelOutlines.add(getLevel(), getBlockPos(), box, state, getExpireTime());
+            return;
+        }
+        pendingBoxes.add(new BorderBox(box, state));
+    }
+
+    /**
+     * places the border of the refresh in progress, by only writing the positions that differ from it
+     * ie. new or changed positions (a box moved or its status changed), border blocks that decayed,
+     * and positions that the terrain no longer blocks. positions that are no longer part of the border are removed.
+     * the border is only recomputed when its boxes change, and the placed positions are only read (verified)
+     * when the border changed, one of its chunks was loaded, or a block was changed at one of its positions.
+     * so an idle refresh doesn't touch the world.
+     */
+    protected void applyParcelBorder() {
+        Level level = getLevel();
+        if (level == null || pendingBoxes.isEmpty()) {
+            pendingBoxes.clear();
+            return;
+        }
+
         // TODO AIR should be a tag and can replace air, water, and BorderBlocks
-        addParcelBorder(box, Blocks.AIR, state);
+        BorderBlockWriter writer = new BorderBlockWriter(level, Blocks.AIR);
+        if (!pendingBoxes.equals(placedBoxes)) {
+            Long2ObjectOpenHashMap<BlockState> border = new Long2ObjectOpenHashMap<>(placedBorder.size());
+            for (BorderBox borderBox : pendingBoxes) {
+                collectParcelBorder(borderBox.toBox(), borderBox.state(), (pos, state) -> border.put(pos.asLong(), state));
+            }
+            // remove the positions that are no longer part of the border, unless they have been replaced
+            for (Long2ObjectMap.Entry<BlockState> entry : Long2ObjectMaps.fastIterable(placedBorder)) {
+                if (!border.containsKey(entry.getLongKey())) {
+                    writer.replace(BlockPos.of(entry.getLongKey()), entry.getValue(), Blocks.AIR.defaultBlockState());
+                }
+            }
+            placedBorder = border;
+            placedBoxes.clear();
+            placedBoxes.addAll(pendingBoxes);
+            placedBorderVerified = false;
+            if (!level.isClientSide()) {
+                LongOpenHashSet chunks = new LongOpenHashSet();
+                for (LongIterator iterator = placedBorder.keySet().iterator(); iterator.hasNext(); ) {
+                    long key = iterator.nextLong();
+                    chunks.add(ChunkPos.asLong(BlockPos.getX(key) >> 4, BlockPos.getZ(key) >> 4));
+                }
+                BorderTracker.track(this, chunks);
+            }
+        }
+        pendingBoxes.clear();
+
+        if (!placedBorderVerified) {
+            BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+            for (Long2ObjectMap.Entry<BlockState> entry : Long2ObjectMaps.fastIterable(placedBorder)) {
+                pos.set(entry.getLongKey());
+                if (level.getBlockState(pos) != entry.getValue()) {
+                    writer.set(pos.immutable(), entry.getValue());
+                }
+            }
+            // set before the flush, so a position that is changed by the block updates of the writes is verified again
+            placedBorderVerified = true;
+        }
+        writer.flush();
+    }
+
+    /**
+     * verifies the placed border on the next refresh ie. one of its chunks has been loaded
+     */
+    public void invalidatePlacedBorder() {
+        placedBorderVerified = false;
+    }
+
+    /**
+     * a block has been changed in one of the chunks of the placed border
+     * @param pos
+     * @param state the new state
+     */
+    public void onBorderChanged(BlockPos pos, BlockState state) {
+        if (placedBorderVerified) {
+            BlockState placed = placedBorder.get(pos.asLong());
+            if (placed != null && placed != state) {
+                placedBorderVerified = false;
+            }
+        }
+    }
+
+    /**
+     * forgets the placed border ie. after it has been removed
+     */
+    protected void clearPlacedBorder() {
+        placedBorder.clear();
+        placedBoxes.clear();
+        placedBorderVerified = false;
+        if (getLevel() != null && !getLevel().isClientSide()) {
+            BorderTracker.untrack(this);
+        }
     }
 
     public void addParcelBorder(Box box, Block removeBlock, BlockState intersectsBlockState) {
@@ -281,59 +461,76 @@ public class BorderStoneBlockEntity extends BlockEntity {
      * @param intersectsBlockState
      */
     public static void addParcelBorder(Level level, Box box, Block removeBlock, BlockState intersectsBlockState) {
+        BorderBlockWriter writer = new BorderBlockWriter(level, removeBlock);
+        collectParcelBorder(box, intersectsBlockState, writer::set);
+        writer.flush();
+    }
+
+    /**
+     * provides the outline positions of the box with the state of the border block at each position.
+     * @param box
+     * @param intersectsBlockState
+     * @param consumer
+     */
+    public static void collectParcelBorder(Box box, BlockState intersectsBlockState, BiConsumer<BlockPos, BlockState> consumer) {
         /* NOTE the for loops.
          * for x is "<=" because the Box was reduced by 1 during creation to ensure
          * it is the right size when including the origin.
          * thus y & z are "<" because we are iterating 2 less (1 on each side) because
          * the border is already generated by the x for loop.
          */
+        ICoords size = ModUtil.getSize(box);
+        int sizeX = size.getX();
+        int sizeY = size.getY();
+        int sizeZ = size.getZ();
+        BlockPos min = box.getMinCoords().toPos();
 
         // only iterate over the outline coords
-        for (int x = 0; x < ModUtil.getSize(box).getX(); x++) {
+        for (int x = 0; x < sizeX; x++) {
             // north, bottom
-            BlockPos pos = box.getMinCoords().toPos().offset(x, 0, 0);
-            replaceParcelBorderBlock(level, pos, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.NORTH).setValue(BorderBlock.POSITION, BorderPosition.BOTTOM));
+            BlockPos pos = min.offset(x, 0, 0);
+            consumer.accept(pos, intersectsBlockState.setValue(FacingBlock.FACING, Direction.NORTH).setValue(BorderBlock.POSITION, BorderPosition.BOTTOM));
 
             // north, top
-            BlockPos pos2 = pos.offset(0, ModUtil.getSize(box).getY()-1, 0);
-            replaceParcelBorderBlock(level, pos2, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.NORTH).setValue(BorderBlock.POSITION, BorderPosition.TOP));
+            BlockPos pos2 = pos.offset(0, sizeY-1, 0);
+            consumer.accept(pos2, intersectsBlockState.setValue(FacingBlock.FACING, Direction.NORTH).setValue(BorderBlock.POSITION, BorderPosition.TOP));
 
             // south, bottom
-            BlockPos pos3 = pos.offset(0, 0, ModUtil.getSize(box).getZ()-1);
-            replaceParcelBorderBlock(level, pos3, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.SOUTH).setValue(BorderBlock.POSITION, BorderPosition.BOTTOM));
+            BlockPos pos3 = pos.offset(0, 0, sizeZ-1);
+            consumer.accept(pos3, intersectsBlockState.setValue(FacingBlock.FACING, Direction.SOUTH).setValue(BorderBlock.POSITION, BorderPosition.BOTTOM));
 
             // south, top
-            BlockPos pos4 = pos.offset(0, ModUtil.getSize(box).getY()-1, ModUtil.getSize(box).getZ()-1);
-            replaceParcelBorderBlock(level, pos4, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.SOUTH).setValue(BorderBlock.POSITION, BorderPosition.TOP));
+            BlockPos pos4 = pos.offset(0, sizeY-1, sizeZ-1);
+            consumer.accept(pos4, intersectsBlockState.setValue(FacingBlock.FACING, Direction.SOUTH).setValue(BorderBlock.POSITION, BorderPosition.TOP));
         }
 
-        for (int z = 1; z < ModUtil.getSize(box).getZ(); z++) {
-            BlockPos pos = box.getMinCoords().toPos().offset(0, 0, z);
-            replaceParcelBorderBlock(level, pos, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.WEST).setValue(BorderBlock.POSITION, BorderPosition.BOTTOM));
+        for (int z = 1; z < sizeZ; z++) {
+            BlockPos pos = min.offset(0, 0, z);
+            consumer.accept(pos, intersectsBlockState.setValue(FacingBlock.FACING, Direction.WEST).setValue(BorderBlock.POSITION, BorderPosition.BOTTOM));
 
-            BlockPos pos2 = pos.offset(0, ModUtil.getSize(box).getY()-1, 0);
-            replaceParcelBorderBlock(level, pos2, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.WEST).setValue(BorderBlock.POSITION, BorderPosition.TOP));
+            BlockPos pos2 = pos.offset(0, sizeY-1, 0);
+            consumer.accept(pos2, intersectsBlockState.setValue(FacingBlock.FACING, Direction.WEST).setValue(BorderBlock.POSITION, BorderPosition.TOP));
 
-            BlockPos pos3 = pos.offset(ModUtil.getSize(box).getX()-1, 0, 0);
-            replaceParcelBorderBlock(level, pos3, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.EAST).setValue(BorderBlock.POSITION, BorderPosition.BOTTOM));
+            BlockPos pos3 = pos.offset(sizeX-1, 0, 0);
+            consumer.accept(pos3, intersectsBlockState.setValue(FacingBlock.FACING, Direction.EAST).setValue(BorderBlock.POSITION, BorderPosition.BOTTOM));
 
-            BlockPos pos4 = pos.offset(ModUtil.getSize(box).getX()-1, ModUtil.getSize(box).getY()-1, 0);
-            replaceParcelBorderBlock(level, pos4, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.EAST).setValue(BorderBlock.POSITION, BorderPosition.TOP));
+            BlockPos pos4 = pos.offset(sizeX-1, sizeY-1, 0);
+            consumer.accept(pos4, intersectsBlockState.setValue(FacingBlock.FACING, Direction.EAST).setValue(BorderBlock.POSITION, BorderPosition.TOP));
         }
 
         // vertical edges
-        for (int y = 1; y < ModUtil.getSize(box).getY(); y++) {
-            BlockPos pos = box.getMinCoords().toPos().offset(0, y, 0);
-            replaceParcelBorderBlock(level, pos, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.NORTH).setValue(BorderBlock.POSITION, BorderPosition.LEFT));
+        for (int y = 1; y < sizeY; y++) {
+            BlockPos pos = min.offset(0, y, 0);
+            consumer.accept(pos, intersectsBlockState.setValue(FacingBlock.FACING, Direction.NORTH).setValue(BorderBlock.POSITION, BorderPosition.LEFT));
 
-            BlockPos pos2 = pos.offset(ModUtil.getSize(box).getX()-1, 0, 0);
-            replaceParcelBorderBlock(level, pos2, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.NORTH).setValue(BorderBlock.POSITION, BorderPosition.RIGHT));
+            BlockPos pos2 = pos.offset(sizeX-1, 0, 0);
+            consumer.accept(pos2, intersectsBlockState.setValue(FacingBlock.FACING, Direction.NORTH).setValue(BorderBlock.POSITION, BorderPosition.RIGHT));
 
-            BlockPos pos3 = pos.offset(0, 0, ModUtil.getSize(box).getZ()-1);
-            replaceParcelBorderBlock(level, pos3, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.SOUTH).setValue(BorderBlock.POSITION, BorderPosition.RIGHT));
+            BlockPos pos3 = pos.offset(0, 0, sizeZ-1);
+            consumer.accept(pos3, intersectsBlockState.setValue(FacingBlock.FACING, Direction.SOUTH).setValue(BorderBlock.POSITION, BorderPosition.RIGHT));
 
-            BlockPos pos4 = pos.offset(ModUtil.getSize(box).getX()-1, 0, ModUtil.getSize(box).getZ()-1);
-            replaceParcelBorderBlock(level, pos4, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.SOUTH ).setValue(BorderBlock.POSITION, BorderPosition.LEFT));
+            BlockPos pos4 = pos.offset(sizeX-1, 0, sizeZ-1);
+            consumer.accept(pos4, intersectsBlockState.setValue(FacingBlock.FACING, Direction.SOUTH ).setValue(BorderBlock.POSITION, BorderPosition.LEFT));
         }
 
         // NOTE there is a mismatch of _LEFT | _RIGHT positions depending on your perspective.
@@ -342,30 +539,30 @@ public class BorderStoneBlockEntity extends BlockEntity {
         // however, if you ARE the outline, then the positions align to the correct directions.
 
         // corners
-        BlockPos pos = box.getMinCoords().toPos().offset(0, ModUtil.getSize(box).getY()-1, 0);
-        replaceParcelBorderBlock(level, pos, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.NORTH).setValue(BorderBlock.POSITION, BorderPosition.TOP_LEFT));
+        BlockPos pos = min.offset(0, sizeY-1, 0);
+        consumer.accept(pos, intersectsBlockState.setValue(FacingBlock.FACING, Direction.NORTH).setValue(BorderBlock.POSITION, BorderPosition.TOP_LEFT));
 
-        pos = box.getMinCoords().toPos().offset(0, 0, 0);
-        replaceParcelBorderBlock(level, pos, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.NORTH).setValue(BorderBlock.POSITION, BorderPosition.BOTTOM_LEFT));
+        pos = min;
+        consumer.accept(pos, intersectsBlockState.setValue(FacingBlock.FACING, Direction.NORTH).setValue(BorderBlock.POSITION, BorderPosition.BOTTOM_LEFT));
 
-        pos = box.getMinCoords().toPos().offset(ModUtil.getSize(box).getX()-1, ModUtil.getSize(box).getY()-1, 0);
-        replaceParcelBorderBlock(level, pos, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.NORTH).setValue(BorderBlock.POSITION, BorderPosition.TOP_RIGHT));
+        pos = min.offset(sizeX-1, sizeY-1, 0);
+        consumer.accept(pos, intersectsBlockState.setValue(FacingBlock.FACING, Direction.NORTH).setValue(BorderBlock.POSITION, BorderPosition.TOP_RIGHT));
 
-        pos = box.getMinCoords().toPos().offset(ModUtil.getSize(box).getX()-1, 0, 0);
-        replaceParcelBorderBlock(level, pos, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.NORTH).setValue(BorderBlock.POSITION, BorderPosition.BOTTOM_RIGHT));
+        pos = min.offset(sizeX-1, 0, 0);
+        consumer.accept(pos, intersectsBlockState.setValue(FacingBlock.FACING, Direction.NORTH).setValue(BorderBlock.POSITION, BorderPosition.BOTTOM_RIGHT));
 
         // south corners
-        pos = box.getMinCoords().toPos().offset(0, ModUtil.getSize(box).getY()-1, ModUtil.getSize(box).getZ()-1);
-        replaceParcelBorderBlock(level, pos, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.SOUTH).setValue(BorderBlock.POSITION, BorderPosition.TOP_RIGHT));
+        pos = min.offset(0, sizeY-1, sizeZ-1);
+        consumer.accept(pos, intersectsBlockState.setValue(FacingBlock.FACING, Direction.SOUTH).setValue(BorderBlock.POSITION, BorderPosition.TOP_RIGHT));
 
-        pos = box.getMinCoords().toPos().offset(0, 0, ModUtil.getSize(box).getZ()-1);
-        replaceParcelBorderBlock(level, pos, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.SOUTH).setValue(BorderBlock.POSITION, BorderPosition.BOTTOM_RIGHT));
+        pos = min.offset(0, 0, sizeZ-1);
+        consumer.accept(pos, intersectsBlockState.setValue(FacingBlock.FACING, Direction.SOUTH).setValue(BorderBlock.POSITION, BorderPosition.BOTTOM_RIGHT));
 
-        pos = box.getMinCoords().toPos().offset(ModUtil.getSize(box).getX()-1, ModUtil.getSize(box).getY()-1, ModUtil.getSize(box).getZ()-1);
-        replaceParcelBorderBlock(level, pos, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.SOUTH).setValue(BorderBlock.POSITION, BorderPosition.TOP_LEFT));
+        pos = min.offset(sizeX-1, sizeY-1, sizeZ-1);
+        consumer.accept(pos, intersectsBlockState.setValue(FacingBlock.FACING, Direction.SOUTH).setValue(BorderBlock.POSITION, BorderPosition.TOP_LEFT));
 
-        pos = box.getMinCoords().toPos().offset(ModUtil.getSize(box).getX()-1, 0, ModUtil.getSize(box).getZ()-1);
-        replaceParcelBorderBlock(level, pos, removeBlock, intersectsBlockState.setValue(FacingBlock.FACING, Direction.SOUTH).setValue(BorderBlock.POSITION, BorderPosition.BOTTOM_LEFT));
+        pos = min.offset(sizeX-1, 0, sizeZ-1);
+        consumer.accept(pos, intersectsBlockState.setValue(FacingBlock.FACING, Direction.SOUTH).setValue(BorderBlock.POSITION, BorderPosition.BOTTOM_LEFT));
 
     }
 
@@ -378,11 +575,21 @@ public class BorderStoneBlockEntity extends BlockEntity {
      */
     public static void replaceParcelBorderBlock(Level level, BlockPos pos, Block removeBlock, BlockState newState) {
         BlockState borderState = level.getBlockState(pos);
-        if ((borderState instanceof IBorderBlock) || borderState.is(removeBlock) || borderState.canBeReplaced()) {
+        if (canReplace(borderState, removeBlock)) {
             level.setBlockAndUpdate(pos, newState);
         }
     }
 
+    /**
+     * true if the border can replace the block state
+     * @param state
+     * @param removeBlock
+     * @return
+     */
+    public static boolean canReplace(BlockState state, Block removeBlock) {
+        return (state.getBlock() instanceof IBorderBlock) || state.is(removeBlock) || state.canBeReplaced();
+    }
+
     /**
      * this is intended to remove any BorderBlocks with another Block
      * that only uses a pre-setup blockState.
@@ -391,50 +598,56 @@ public class BorderStoneBlockEntity extends BlockEntity {
      * @param blockState
      */
     public static void replaceParcelBorder(Level level, Box box, Block removeBlock, BlockState blockState) {
+        ICoords size = ModUtil.getSize(box);
+        int sizeX = size.getX();
+        int sizeY = size.getY();
+        int sizeZ = size.getZ();
+        BlockPos min = box.getMinCoords().toPos();
+        BorderBlockWriter writer = new BorderBlockWriter(level, removeBlock);
+
         // only iterate over the outline coords
-        for (int x = 0; x < ModUtil.getSize(box).getX(); x++) {
-            BlockPos pos = box.getMinCoords().toPos().offset(x, 0, 0);
-            replaceParcelBorderBlock(level, pos, removeBlock, blockState);
+        for (int x = 0; x < sizeX; x++) {
+            BlockPos pos = min.offset(x, 0, 0);
+            writer.set(pos, blockState);
 
-            BlockPos pos2 = pos.offset(0, ModUtil.getSize(box).getY()-1, 0);
-            replaceParcelBorderBlock(level, pos2, removeBlock, blockState);
+            BlockPos pos2 = pos.offset(0, sizeY-1, 0);
+            writer.set(pos2, blockState);
 
-            BlockPos pos3 = pos.offset(0, 0, ModUtil.getSize(box).getZ()-1);
-            replaceParcelBorderBlock(level, pos3, removeBlock, blockState);
+            BlockPos pos3 = pos.offset(0, 0, sizeZ-1);
+            writer.set(pos3, blockState);
 
-            BlockPos pos4 = pos.offset(0, ModUtil.getSize(box).getY()-1, ModUtil.getSize(box).getZ()-1);
-            replaceParcelBorderBlock(level, pos4, removeBlock, blockState);
+            BlockPos pos4 = pos.offset(0, sizeY-1, sizeZ-1);
+            writer.set(pos4, blockState);
         }
 
-        for (int z = 1; z < ModUtil.getSize(box).getZ(); z++) {
-            BlockPos pos = box.getMinCoords().toPos().offset(0, 0, z);
-            BlockState borderState = level.getBlockState(pos);
-            replaceParcelBorderBlock(level, pos, removeBlock, blockState);
+        for (int z = 1; z < sizeZ; z++) {
+            BlockPos pos = min.offset(0, 0, z);
+            writer.set(pos, blockState);
 
-            BlockPos pos2 = pos.offset(0, ModUtil.getSize(box).getY()-1, 0);
-            replaceParcelBorderBlock(level, pos2, removeBlock, blockState);
+            BlockPos pos2 = pos.offset(0, sizeY-1, 0);
+            writer.set(pos2, blockState);
 
-            BlockPos pos3 = pos.offset(ModUtil.getSize(box).getX()-1, 0, 0);
-            replaceParcelBorderBlock(level, pos3, removeBlock, blockState);
+            BlockPos pos3 = pos.offset(sizeX-1, 0, 0);
+            writer.set(pos3, blockState);
 
-            BlockPos pos4 = pos.offset(ModUtil.getSize(box).getX()-1, ModUtil.getSize(box).getY()-1, 0);
-            replaceParcelBorderBlock(level, pos4, removeBlock, blockState);
+            BlockPos pos4 = pos.offset(sizeX-1, sizeY-1, 0);
+            writer.set(pos4, blockState);
         }
 
-        for (int y = 1; y < ModUtil.getSize(box).getY(); y++) {
-            BlockPos pos = box.getMinCoords().toPos().offset(0, y, 0);
-            BlockState borderState = level.getBlockState(pos);
-            replaceParcelBorderBlock(level, pos, removeBlock, blockState);
+        for (int y = 1; y < sizeY; y++) {
+            BlockPos pos = min.offset(0, y, 0);
+            writer.set(pos, blockState);
 
-            BlockPos pos2 = pos.offset(ModUtil.getSize(box).getX()-1, 0, 0);
-            replaceParcelBorderBlock(level, pos2, removeBlock, blockState);
+            BlockPos pos2 = pos.offset(sizeX-1, 0, 0);
+            writer.set(pos2, blockState);
 
-            BlockPos pos3 = pos.offset(0, 0, ModUtil.getSize(box).getZ()-1);
-            replaceParcelBorderBlock(level, pos3, removeBlock, blockState);
+            BlockPos pos3 = pos.offset(0, 0, sizeZ-1);
+            writer.set(pos3, blockState);
 
-            BlockPos pos4 = pos.offset(ModUtil.getSize(box).getX()-1, 0, ModUtil.getSize(box).getZ()-1);
-            replaceParcelBorderBlock(level, pos4, removeBlock, blockState);
+            BlockPos pos4 = pos.offset(sizeX-1, 0, sizeZ-1);
+            writer.set(pos4, blockState);
         }
+        writer.flush();
     }
 
     /**
@@ -454,6 +667,9 @@ public class BorderStoneBlockEntity extends BlockEntity {
     }
 
     public void removeParcelBorder(Level level, ICoords coords) {
+        ParcelOutlines.remove(level, getBlockPos());
+        clearPlacedBorder();
+        // the blocks are removed in any display mode, as they may have been placed before the mode was changed
         Box box = getBorderDisplayBox(coords);
         replaceParcelBorder(level, box, getBorderBlock(), Blocks.AIR.defaultBlockState());
         box = ModUtil.inflate(box, getBufferSize(getParcelType()));
@@ -464,6 +680,7 @@ public class BorderStoneBlockEntity extends BlockEntity {
      * static variant where all values are provided
      */
     public static void removeParcelBorder(Level level, Box box, Block borderBlock, int bufferSize) {
+        ParcelOutlines.remove(level, box);
         replaceParcelBorder(level, box, borderBlock, Blocks.AIR.defaultBlockState());
         box = ModUtil.inflate(box, bufferSize);
         replaceParcelBorder(level, box, ModBlocks.BUFFER.get(), Blocks.AIR.defaultBlockState());
@@ -0,0 +1,125 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.block.entity;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.state.BlockState;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * tracks the chunks that the placed borders of the border stones are in, so that a stone only verifies
+ * its placed border when it may have changed ie. when one of its chunks is loaded, or when a block
+ * is changed at one of its positions. otherwise an unchanged border is not read on each refresh.
+ * only accessed on the server thread.
+ */
+public final class BorderTracker {
+    // the stones with a placed border in each chunk (of any level)
+    private static final Long2ObjectOpenHashMap<List<BorderStoneBlockEntity>> CHUNKS = new Long2ObjectOpenHashMap<>();
+    // the chunks of each stone
+    private static final Reference2ObjectOpenHashMap<BorderStoneBlockEntity, LongSet> TRACKED = new Reference2ObjectOpenHashMap<>();
+
+    private BorderTracker() {}
+
+    /**
+     * tracks the chunks of the stone's placed border, replacing the previously tracked chunks
+     * @param entity
+     * @param chunks the chunk keys (ChunkPos.toLong())
+     */
+    public static void track(BorderStoneBlockEntity entity, LongSet chunks) {
+        untrack(entity);
+        if (chunks.isEmpty()) {
+            return;
+        }
+        TRACKED.put(entity, chunks);
+        for (LongIterator iterator = chunks.iterator(); iterator.hasNext(); ) {
+            CHUNKS.computeIfAbsent(iterator.nextLong(), key -> new ArrayList<>(1)).add(entity);
+        }
+    }
+
+    /**
+     * stops tracking the stone ie. when its border is cleared, or it is removed or unloaded
+     * @param entity
+     */
+    public static void untrack(BorderStoneBlockEntity entity) {
+        LongSet chunks = TRACKED.remove(entity);
+        if (chunks == null) {
+            return;
+        }
+        for (LongIterator iterator = chunks.iterator(); iterator.hasNext(); ) {
+            long chunk = iterator.nextLong();
+            List<BorderStoneBlockEntity> entities = CHUNKS.get(chunk);
+            if (entities != null) {
+                entities.remove(entity);
+                if (entities.isEmpty()) {
+                    CHUNKS.remove(chunk);
+                }
+            }
+        }
+    }
+
+    /**
+     * the chunk has been loaded, so the placed borders in it are verified on the next refresh
+     * ie. the chunk may have been changed while it was unloaded
+     * @param level
+     * @param chunkPos
+     */
+    public static void onChunkLoad(Level level, ChunkPos chunkPos) {
+        List<BorderStoneBlockEntity> entities = CHUNKS.get(chunkPos.toLong());
+        if (entities == null) {
+            return;
+        }
+        for (BorderStoneBlockEntity entity : entities) {
+            if (entity.getLevel() == level) {
+                entity.invalidatePlacedBorder();
+            }
+        }
+    }
+
+    /**
+     * a block has been changed, so the placed border at the position (if any) is verified on the next refresh
+     * @param level
+     * @param pos
+     * @param state the new state
+     */
+    public static void onBlockChanged(Level level, BlockPos pos, BlockState state) {
+        List<BorderStoneBlockEntity> entities = CHUNKS.get(ChunkPos.asLong(pos));
+        if (entities == null) {
+            return;
+        }
+        for (BorderStoneBlockEntity entity : entities) {
+            if (entity.getLevel() == level) {
+                entity.onBorderChanged(pos, state);
+            }
+        }
+    }
+
+    public static void clear() {
+        CHUNKS.clear();
+        TRACKED.clear();
+    }
+}
@@ -24,7 +24,7 @@ import mod.gottsch.forge.claimmyland.core.block.BorderBlock;
 import mod.gottsch.forge.claimmyland.core.block.BorderStatus;
 import mod.gottsch.forge.claimmyland.core.block.BufferBlock;
 import mod.gottsch.forge.claimmyland.core.block.ModBlocks;
-import mod.gottsch.forge.claimmyland.core.config.Config;
+import mod.gottsch.forge.claimmyland.core.config.ConfigSnapshot;
 import mod.gottsch.forge.claimmyland.core.parcel.NationParcel;
 import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
 import mod.gottsch.forge.claimmyland.core.parcel.ParcelType;
@@ -56,7 +56,7 @@ public class CitizenFoundationStoneBlockEntity extends FoundationStoneBlockEntit
 
     @Override
     public int getBufferSize(ParcelType type) {
-        return Config.SERVER.general.parcelBufferRadius.get();
+        return ConfigSnapshot.get().parcelBufferRadius;
     }
 
     @Override
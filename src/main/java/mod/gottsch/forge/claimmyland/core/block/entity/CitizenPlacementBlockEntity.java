@@ -4,7 +4,8 @@ import mod.gottsch.forge.claimmyland.ClaimMyLand;
 import mod.gottsch.forge.claimmyland.core.block.BorderBlock;
 import mod.gottsch.forge.claimmyland.core.block.BorderStatus;
 import mod.gottsch.forge.claimmyland.core.block.ModBlocks;
-import mod.gottsch.forge.claimmyland.core.config.Config;
+import mod.gottsch.forge.claimmyland.core.config.ConfigSnapshot;
+import mod.gottsch.forge.claimmyland.core.network.ParcelOutlines;
 import mod.gottsch.forge.claimmyland.core.parcel.NationParcel;
 import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
 import mod.gottsch.forge.claimmyland.core.parcel.ParcelType;
@@ -50,6 +51,12 @@ public class CitizenPlacementBlockEntity extends BorderStoneBlockEntity {
         super(ModBlockEntities.CITIZEN_PLACEMENT_ENTITY_TYPE.get(), pos, state);
     }
 
+    // the borders are only placed once
+    @Override
+    protected boolean isRefreshed() {
+        return false;
+    }
+
     // don't tick
     public void tickServer() {
 
@@ -57,7 +64,7 @@ public class CitizenPlacementBlockEntity extends BorderStoneBlockEntity {
 
     @Override
     public int getBufferSize(ParcelType type) {
-      return Config.SERVER.general.parcelBufferRadius.get();
+      return ConfigSnapshot.get().parcelBufferRadius;
     }
 
     @Override
@@ -118,10 +125,13 @@ public class CitizenPlacementBlockEntity extends BorderStoneBlockEntity {
         Box box = new Box(getCoords1(), getCoords2());
         BlockState borderState = getBorderBlockState(box);
         placeParcelBorder(box, borderState);
+        applyParcelBorder();
     }
 
     @Override
     public void removeParcelBorder(Level level, ICoords coords) {
+        ParcelOutlines.remove(level, getBlockPos());
+        clearPlacedBorder();
         Box box = getBorderDisplayBox(coords);
         replaceParcelBorder(level, box, getBorderBlock(), Blocks.AIR.defaultBlockState());
     }
@@ -130,6 +140,7 @@ public class CitizenPlacementBlockEntity extends BorderStoneBlockEntity {
      * static variant where all values are provided
      */
     public static void removeParcelBorder(Level level, Box box, Block borderBlock) {
+        ParcelOutlines.remove(level, box);
         replaceParcelBorder(level, box, borderBlock, Blocks.AIR.defaultBlockState());
     }
 
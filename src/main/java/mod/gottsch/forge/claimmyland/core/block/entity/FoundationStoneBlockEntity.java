@@ -56,6 +56,12 @@ public abstract class FoundationStoneBlockEntity extends BorderStoneBlockEntity
         super(type, pos, state);
     }
 
+    // the borders are only placed once
+    @Override
+    protected boolean isRefreshed() {
+        return false;
+    }
+
     /**
      *
      */
@@ -24,7 +24,7 @@ import mod.gottsch.forge.claimmyland.core.block.BorderBlock;
 import mod.gottsch.forge.claimmyland.core.block.BorderStatus;
 import mod.gottsch.forge.claimmyland.core.block.BufferBlock;
 import mod.gottsch.forge.claimmyland.core.block.ModBlocks;
-import mod.gottsch.forge.claimmyland.core.config.Config;
+import mod.gottsch.forge.claimmyland.core.config.ConfigSnapshot;
 import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
 import mod.gottsch.forge.claimmyland.core.parcel.ParcelType;
 import mod.gottsch.forge.claimmyland.core.registry.ParcelRegistry;
@@ -54,7 +54,7 @@ public class NationFoundationStoneBlockEntity extends FoundationStoneBlockEntity
 
     @Override
     public int getBufferSize(ParcelType type) {
-      return Config.SERVER.general.nationParcelBufferRadius.get();
+      return ConfigSnapshot.get().nationParcelBufferRadius;
     }
 
     @Override
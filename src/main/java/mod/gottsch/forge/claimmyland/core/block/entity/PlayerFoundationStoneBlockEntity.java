@@ -4,7 +4,7 @@ import mod.gottsch.forge.claimmyland.core.block.BorderBlock;
 import mod.gottsch.forge.claimmyland.core.block.BorderStatus;
 import mod.gottsch.forge.claimmyland.core.block.BufferBlock;
 import mod.gottsch.forge.claimmyland.core.block.ModBlocks;
-import mod.gottsch.forge.claimmyland.core.config.Config;
+import mod.gottsch.forge.claimmyland.core.config.ConfigSnapshot;
 import mod.gottsch.forge.claimmyland.core.parcel.ZoneParcel;
 import mod.gottsch.forge.claimmyland.core.parcel.NationParcel;
 import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
@@ -37,7 +37,7 @@ public class PlayerFoundationStoneBlockEntity extends FoundationStoneBlockEntity
 
     @Override
     public int getBufferSize(ParcelType type) {
-      return Config.SERVER.general.parcelBufferRadius.get();
+      return ConfigSnapshot.get().parcelBufferRadius;
     }
 
     @Override
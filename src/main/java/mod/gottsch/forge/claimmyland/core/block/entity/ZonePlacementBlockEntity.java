@@ -25,6 +25,7 @@ import mod.gottsch.forge.claimmyland.core.block.BorderStatus;
 import mod.gottsch.forge.claimmyland.core.block.BufferBlock;
 import mod.gottsch.forge.claimmyland.core.block.ModBlocks;
 import mod.gottsch.forge.claimmyland.core.config.Config;
+import mod.gottsch.forge.claimmyland.core.network.ParcelOutlines;
 import mod.gottsch.forge.claimmyland.core.parcel.NationParcel;
 import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
 import mod.gottsch.forge.claimmyland.core.parcel.ParcelType;
@@ -71,6 +72,12 @@ public class ZonePlacementBlockEntity extends BorderStoneBlockEntity {
         super(ModBlockEntities.ZONE_PLACEMENT_ENTITY_TYPE.get(), pos, state);
     }
 
+    // the borders are only placed once
+    @Override
+    protected boolean isRefreshed() {
+        return false;
+    }
+
     // don't tick
     public void tickServer() {
 
@@ -140,10 +147,13 @@ public class ZonePlacementBlockEntity extends BorderStoneBlockEntity {
         Box box = new Box(getCoords1(), getCoords2());
         BlockState borderState = getBorderBlockState(box);
         placeParcelBorder(box, borderState);
+        applyParcelBorder();
     }
 
     @Override
     public void removeParcelBorder(Level level, ICoords coords) {
+        ParcelOutlines.remove(level, getBlockPos());
+        clearPlacedBorder();
         Box box = getBorderDisplayBox(coords);
         replaceParcelBorder(level, box, getBorderBlock(), Blocks.AIR.defaultBlockState());
     }
@@ -152,6 +162,7 @@ public class ZonePlacementBlockEntity extends BorderStoneBlockEntity {
      * static variant where all values are provided
      */
     public static void removeParcelBorder(Level level, Box box, Block borderBlock) {
+        ParcelOutlines.remove(level, box);
         replaceParcelBorder(level, box, borderBlock, Blocks.AIR.defaultBlockState());
     }
 
@@ -0,0 +1,128 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.client;
+
+import com.mojang.blaze3d.vertex.PoseStack;
+import com.mojang.blaze3d.vertex.VertexConsumer;
+import mod.gottsch.forge.claimmyland.ClaimMyLand;
+import mod.gottsch.forge.claimmyland.core.block.BorderStatus;
+import mod.gottsch.forge.claimmyland.core.network.ParcelOutline;
+import mod.gottsch.forge.claimmyland.core.network.ParcelOutlineMessage;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.LevelRenderer;
+import net.minecraft.client.renderer.MultiBufferSource;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.phys.Vec3;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.client.event.RenderLevelStageEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * renders the border outlines sent by the server (BorderDisplayMode.OUTLINE) as line boxes.
+ */
+@Mod.EventBusSubscriber(modid = ClaimMyLand.MOD_ID, value = Dist.CLIENT, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class ParcelOutlineRenderer {
+
+    private record Entry(List<ParcelOutline> outlines, long expireTime) {}
+
+    // keyed by border stone. only accessed on the client thread.
+    private static final Map<BlockPos, Entry> OUTLINES = new HashMap<>();
+
+    /**
+     * applies an outline message. called on the client thread.
+     * @param message
+     */
+    public static void handle(ParcelOutlineMessage message) {
+        if (message.getOutlines().isEmpty()) {
+            OUTLINES.remove(message.getSource());
+            return;
+        }
+        Minecraft minecraft = Minecraft.getInstance();
+        if (minecraft.level == null) {
+            return;
+        }
+        OUTLINES.put(message.getSource(), new Entry(message.getOutlines(), minecraft.level.getGameTime() + message.getLifetime()));
+    }
+
+    @SubscribeEvent
+    public static void onRenderLevel(RenderLevelStageEvent event) {
+        if (event.getStage() != RenderLevelStageEvent.Stage.AFTER_TRANSLUCENT_BLOCKS || OUTLINES.isEmpty()) {
+            return;
+        }
+        Minecraft minecraft = Minecraft.getInstance();
+        if (minecraft.level == null) {
+            return;
+        }
+        long time = minecraft.level.getGameTime();
+        Vec3 camera = event.getCamera().getPosition();
+        PoseStack poseStack = event.getPoseStack();
+        MultiBufferSource.BufferSource bufferSource = minecraft.renderBuffers().bufferSource();
+        VertexConsumer lines = bufferSource.getBuffer(RenderType.lines());
+
+        poseStack.pushPose();
+        poseStack.translate(-camera.x, -camera.y, -camera.z);
+        Iterator<Entry> iterator = OUTLINES.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (time > entry.expireTime()) {
+                iterator.remove();
+                continue;
+            }
+            for (ParcelOutline outline : entry.outlines()) {
+                float[] color = getColor(outline);
+                // the outline is of the inclusive block coords
+                LevelRenderer.renderLineBox(poseStack, lines,
+                        outline.getMinX(), outline.getMinY(), outline.getMinZ(),
+                        outline.getMaxX() + 1, outline.getMaxY() + 1, outline.getMaxZ() + 1,
+                        color[0], color[1], color[2], 1.0F);
+            }
+        }
+        poseStack.popPose();
+        bufferSource.endBatch(RenderType.lines());
+    }
+
+    private static float[] getColor(ParcelOutline outline) {
+        if (outline.getStatus() == BorderStatus.BAD) {
+            return new float[] {1.0F, 0.0F, 0.0F};
+        }
+        if (outline.isBuffer()) {
+            return new float[] {1.0F, 0.65F, 0.0F};
+        }
+        return switch (outline.getType()) {
+            case NATION -> new float[] {0.0F, 0.4F, 1.0F};
+            case CITIZEN -> new float[] {0.0F, 0.8F, 0.8F};
+            case ZONE -> new float[] {0.8F, 0.0F, 0.8F};
+            default -> new float[] {0.0F, 1.0F, 0.0F};
+        };
+    }
+
+    @SubscribeEvent
+    public static void onLoggingOut(ClientPlayerNetworkEvent.LoggingOut event) {
+        OUTLINES.clear();
+    }
+}
@@ -61,6 +61,9 @@ public class CommandHelper {
 	public static final String NEW_NAME = "new_name";
 	public static final String BACKUP = "backup";
 	public static final String RESTORE = "restore";
+	public static final String BACKUP_NAME = "backup_name";
+	public static final String BORDERS = "borders";
+	public static final String STATS = "stats";
 	public static final String WHITELIST = "whitelist";
 	public static final String BY_OWNER = "by_owner";
 	public static final String BY_NATION = "by_nation";
@@ -24,6 +24,7 @@ import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.suggestion.SuggestionProvider;
 import mod.gottsch.forge.claimmyland.ClaimMyLand;
+import mod.gottsch.forge.claimmyland.core.block.entity.BorderRefreshScheduler;
 import mod.gottsch.forge.claimmyland.core.config.Config;
 import mod.gottsch.forge.claimmyland.core.item.Deed;
 import mod.gottsch.forge.claimmyland.core.item.DeedFactory;
@@ -31,6 +32,7 @@ import mod.gottsch.forge.claimmyland.core.parcel.NationBorderType;
 import mod.gottsch.forge.claimmyland.core.parcel.NationParcel;
 import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
 import mod.gottsch.forge.claimmyland.core.parcel.ParcelType;
+import mod.gottsch.forge.claimmyland.core.persistence.ParcelBackup;
 import mod.gottsch.forge.claimmyland.core.registry.ParcelRegistry;
 import mod.gottsch.forge.claimmyland.core.util.LangUtil;
 import mod.gottsch.forge.gottschcore.spatial.Box;
@@ -69,6 +71,10 @@ public class OpsCommand {
         return SharedSuggestionProvider.suggest(Arrays.stream(NationBorderType.values()).map(NationBorderType::getSerializedName), builder);
     };
 
+    private static final SuggestionProvider<CommandSourceStack> BACKUP_NAMES = (source, builder) -> {
+        return SharedSuggestionProvider.suggest(ParcelBackup.list(source.getSource().getServer()), builder);
+    };
+
 
     private static final SuggestionProvider<CommandSourceStack> PARCEL_NAMES = (source, builder) -> {
         String ownerName = StringArgumentType.getString(source, CommandHelper.OWNER_NAME);
@@ -200,6 +206,16 @@ public class OpsCommand {
 //                                                        )
 //                                                )
                                 )
+                                ///// BORDERS TOP-LEVEL OPTION /////
+                                .then(Commands.literal(CommandHelper.BORDERS).requires(source -> {
+                                                    return source.hasPermission(Config.SERVER.general.opsPermissionLevel.get());
+                                                })
+                                                .then(Commands.literal(CommandHelper.STATS)
+                                                        .executes(source -> {
+                                                            return borderStats(source.getSource());
+                                                        })
+                                                )
+                                )
                                 ///// PARCEL TOP-LEVEL OPTION /////
                                 .then(Commands.literal(CommandHelper.PARCEL).requires(source -> {
                                                     return source.hasPermission(Config.SERVER.general.opsPermissionLevel.get());
@@ -407,12 +423,41 @@ public class OpsCommand {
                                                             return ParcelCommandDelegate.backupParcels(source.getSource());
                                                         })
                                                 )
+                                                ///// RESTORE /////
+                                                .then(Commands.literal(CommandHelper.RESTORE)
+                                                        .executes(source -> {
+                                                            return ParcelCommandDelegate.restoreParcels(source.getSource(), null);
+                                                        })
+                                                        .then(Commands.argument(CommandHelper.BACKUP_NAME, StringArgumentType.string())
+                                                                .suggests(BACKUP_NAMES)
+                                                                .executes(source -> {
+                                                                    return ParcelCommandDelegate.restoreParcels(source.getSource(), StringArgumentType.getString(source, CommandHelper.BACKUP_NAME));
+                                                                })
+                                                        )
+                                                )
                                 )
                 );
 
 
     } // end of method
 
+    /**
+     * displays the border refresh scheduler metrics, and resets the max tick time
+     * @param source
+     * @return
+     */
+    private static int borderStats(CommandSourceStack source) {
+        source.sendSuccess(() -> Component.translatable(LangUtil.chat("border.stats"),
+                BorderRefreshScheduler.getScheduledCount(),
+                BorderRefreshScheduler.getQueueDepth(),
+                BorderRefreshScheduler.getLastTickRefreshes(),
+                String.format("%.3f", BorderRefreshScheduler.getLastTickNanos() / 1_000_000.0),
+                String.format("%.3f", BorderRefreshScheduler.getMaxTickNanos() / 1_000_000.0),
+                BorderRefreshScheduler.getTotalRefreshes()).withStyle(ChatFormatting.WHITE), false);
+        BorderRefreshScheduler.resetMaxTickNanos();
+        return 1;
+    }
+
     private static int generateDeed(CommandSourceStack source, String deedType, int xSize, int ySizeUp, int ySizeDown, int zSize) {
         return generateDeed(source, deedType, xSize, ySizeUp, ySizeDown, zSize, "");
     }
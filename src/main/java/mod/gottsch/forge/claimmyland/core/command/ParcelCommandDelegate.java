@@ -26,6 +26,7 @@ import mod.gottsch.forge.claimmyland.core.item.Deed;
 import mod.gottsch.forge.claimmyland.core.item.DeedFactory;
 import mod.gottsch.forge.claimmyland.core.item.NationDeed;
 import mod.gottsch.forge.claimmyland.core.parcel.*;
+import mod.gottsch.forge.claimmyland.core.persistence.ParcelBackup;
 import mod.gottsch.forge.claimmyland.core.registry.ParcelRegistry;
 import mod.gottsch.forge.claimmyland.core.registry.PlayerRegistry;
 import mod.gottsch.forge.claimmyland.core.util.LangUtil;
@@ -249,6 +250,7 @@ public class ParcelCommandDelegate {
                 if (ParcelRegistry.abandonParcel(parcel.get().getId())) {
                     // set the abandon time
                     parcel.get().setAbandonedTime(source.getLevel().getGameTime());
+                    ParcelRegistry.markDirty(parcel.get());
                     source.sendSuccess(() -> Component.translatable(LangUtil.chat("parcel.abandon.success")).withStyle(ChatFormatting.GREEN), false);
                     CommandHelper.save(source.getLevel());
                 } else {
@@ -265,14 +267,54 @@ public class ParcelCommandDelegate {
     }
 
     /**
-     * TODO flesh out to save to file(s)
+     * backs up all the parcels to a file. the file is written in the background.
      *
      * @param source
      * @return
      */
     public static int backupParcels(CommandSourceStack source) {
-        String dump = ParcelRegistry.toJson();
-        ClaimMyLand.LOGGER.debug("backup -> {}", dump);
+        backup(source);
+        return 1;
+    }
+
+    private static ParcelBackup.Backup backup(CommandSourceStack source) {
+        ParcelBackup.Backup backup = ParcelBackup.backup(source.getServer());
+        source.sendSuccess(() -> Component.translatable(LangUtil.chat("parcel.backup.started"), backup.getName()).withStyle(ChatFormatting.YELLOW), false);
+        backup.getFuture().whenComplete((count, error) -> source.getServer().execute(() -> {
+            if (error == null) {
+                source.sendSuccess(() -> Component.translatable(LangUtil.chat("parcel.backup.success"), count, backup.getName()).withStyle(ChatFormatting.GREEN), false);
+            } else {
+                failure(source, "parcel.backup.failure");
+            }
+        }));
+        return backup;
+    }
+
+    /**
+     * restores the parcels from a backup, replacing all the current parcels.
+     *
+     * @param source
+     * @param backupName the backup file name, or null for the latest backup
+     * @return
+     */
+    public static int restoreParcels(CommandSourceStack source, String backupName) {
+        if (backupName == null) {
+            List<String> backups = ParcelBackup.list(source.getServer());
+            if (backups.isEmpty()) {
+                failure(source, "parcel.restore.not_found");
+                return 1;
+            }
+            backupName = backups.get(0);
+        }
+        String name = backupName;
+        source.sendSuccess(() -> Component.translatable(LangUtil.chat("parcel.restore.started"), name).withStyle(ChatFormatting.YELLOW), false);
+        ParcelBackup.restore(source.getServer(), name).whenComplete((count, error) -> source.getServer().execute(() -> {
+            if (error == null) {
+                source.sendSuccess(() -> Component.translatable(LangUtil.chat("parcel.restore.success"), count, name).withStyle(ChatFormatting.GREEN), false);
+            } else {
+                source.sendFailure(Component.translatable(LangUtil.chat("parcel.restore.failure"), name).withStyle(ChatFormatting.RED));
+            }
+        }));
         return 1;
     }
 
@@ -295,6 +337,7 @@ public class ParcelCommandDelegate {
                     .findFirst()
                     .ifPresentOrElse(nation -> {
                         ((NationParcel) nation).setBorderType(type);
+                        ParcelRegistry.markDirty(nation);
                         CommandHelper.save(source.getLevel());
                     }, () -> {
                         failure(source, "parcel.nation.unable_to_locate");
@@ -524,6 +567,7 @@ public class ParcelCommandDelegate {
             if (parcel.isPresent()) {
                 // TODO ensure that the new name is unique across ALL parcels
                 parcel.get().setName(newName);
+                ParcelRegistry.markDirty(parcel.get());
                 source.sendSuccess(() -> Component.translatable(LangUtil.chat("parcel.rename.success")).withStyle(ChatFormatting.GREEN), false);
                 CommandHelper.save(source.getLevel());
             } else {
@@ -556,6 +600,7 @@ public class ParcelCommandDelegate {
                     if (newOwner != null) {
                         ParcelRegistry.updateOwner(parcel.get().getId(), newOwner.getUUID());
                         parcel.get().setOwnerTime(source.getLevel().getGameTime());
+                        ParcelRegistry.markDirty(parcel.get());
                     } else {
                         CommandHelper.sendUnableToLocatePlayerMessage(source, newOwnerName);
                         return -1;
@@ -586,10 +631,11 @@ public class ParcelCommandDelegate {
     }
 
     public static int clearAllParcels (CommandSourceStack source){
-        backupParcels(source);
-        // TODO add an undo/restore command
+        // the backup snapshot is taken before the clear, so it can be restored
+        ParcelBackup.Backup backup = backup(source);
         ParcelRegistry.clear();
-        // TODO message
+        CommandHelper.save(source.getLevel());
+        source.sendSuccess(() -> Component.translatable(LangUtil.chat("parcel.clear.success"), backup.getName()).withStyle(ChatFormatting.GREEN), false);
         return 1;
     }
 
@@ -26,6 +26,7 @@ public class ParcelWhitelistCommandDelegate {
             Optional<Parcel> parcel = parcels.stream().filter(p -> p.getName().equalsIgnoreCase(parcelName)).findFirst();
             if (parcel.isPresent()) {
                 parcel.get().getWhitelist().add(player.getUUID());
+                ParcelRegistry.markDirty(parcel.get());
                 CommandHelper.save(source.getLevel());
                 source.sendSuccess(() -> Component.translatable(LangUtil.chat("parcel.whitelist.add.success")).withStyle(ChatFormatting.RED), false);
 
@@ -291,6 +291,7 @@ public class PlayersCommand {
 			}
 
 			((NationParcel)nation.get()).setBorderType(type);
+			ParcelRegistry.markDirty(nation.get());
 			CommandHelper.save(source.getLevel());
 
 		} catch(Exception e) {
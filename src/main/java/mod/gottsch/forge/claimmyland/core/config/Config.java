@@ -18,14 +18,21 @@
 package mod.gottsch.forge.claimmyland.core.config;
 
 import mod.gottsch.forge.claimmyland.ClaimMyLand;
+import mod.gottsch.forge.claimmyland.core.block.BorderDisplayMode;
+import mod.gottsch.forge.claimmyland.core.persistence.ParcelStore;
 import mod.gottsch.forge.claimmyland.core.persistence.PersistedData;
+import mod.gottsch.forge.claimmyland.core.registry.ParcelRegistry;
 import mod.gottsch.forge.gottschcore.config.AbstractConfig;
 import net.minecraftforge.common.ForgeConfigSpec;
 import net.minecraftforge.common.ForgeConfigSpec.BooleanValue;
 import net.minecraftforge.common.ForgeConfigSpec.IntValue;
+import net.minecraft.server.MinecraftServer;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.ModLoadingContext;
 import net.minecraftforge.fml.common.Mod.EventBusSubscriber;
 import net.minecraftforge.fml.config.ModConfig;
+import net.minecraftforge.fml.event.config.ModConfigEvent;
+import net.minecraftforge.server.ServerLifecycleHooks;
 import org.apache.commons.lang3.tuple.Pair;
 
 /**
@@ -37,6 +44,7 @@ import org.apache.commons.lang3.tuple.Pair;
 public class Config extends AbstractConfig {
 	public static final String GENERAL_CATEGORY = "general";
 	public static final String PROTECTION_CATEGORY = "protection";
+	public static final String PERSISTENCE_CATEGORY = "persistence";
 	public static final String UNDERLINE_DIV = "------------------------------";
 
 	public static final ForgeConfigSpec COMMON_SPEC;
@@ -89,6 +97,34 @@ public class Config extends AbstractConfig {
 		ModLoadingContext.get().registerConfig(ModConfig.Type.SERVER, SERVER_SPEC);
 	}
 
+	@SubscribeEvent
+	public static void onLoad(final ModConfigEvent.Loading event) {
+		onServerConfigChange(event.getConfig());
+	}
+
+	@SubscribeEvent
+	public static void onReload(final ModConfigEvent.Reloading event) {
+		onServerConfigChange(event.getConfig());
+	}
+
+	/**
+	 * rebuilds the config snapshot. if the buffer radii changed, the registry buffer indexes
+	 * are rebuilt on the server thread (config reloads are fired from the file watcher thread).
+	 * @param config
+	 */
+	private static void onServerConfigChange(ModConfig config) {
+		if (config.getSpec() != SERVER_SPEC) {
+			return;
+		}
+		ConfigSnapshot previous = ConfigSnapshot.rebuild();
+		if (ConfigSnapshot.get().isBufferChanged(previous)) {
+			MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+			if (server != null) {
+				server.execute(ParcelRegistry::rebuildBufferIndexes);
+			}
+		}
+	}
+
 	@Deprecated
 //	public static void init() {
 //		Config.GENERAL.init();
@@ -115,11 +151,13 @@ public class Config extends AbstractConfig {
 		public General general;
 		public Borders borders;
 		public Protection protection;
+		public Persistence persistence;
 
 		public ServerConfig(ForgeConfigSpec.Builder builder) {
 			general = new General(builder);
 			borders = new Borders(builder);
 			protection = new Protection(builder);
+			persistence = new Persistence(builder);
 		}
 	}
 
@@ -201,6 +239,8 @@ public class Config extends AbstractConfig {
 		public ForgeConfigSpec.LongValue ticksPerBorderStoneRefresh;
 		public ForgeConfigSpec.IntValue borderStoneLifeSpan;
 		public ForgeConfigSpec.IntValue foundationStoneLifeSpan;
+		public ForgeConfigSpec.EnumValue<BorderDisplayMode> borderDisplayMode;
+		public ForgeConfigSpec.DoubleValue borderRefreshBudget;
 
 		Borders(final ForgeConfigSpec.Builder builder) {
 			builder.comment(CATEGORY_DIV, " General properties for Protect It  mod.", CATEGORY_DIV).push(GENERAL_CATEGORY);
@@ -217,6 +257,16 @@ public class Config extends AbstractConfig {
 					.comment(" The life span of a foundation stone in ticks.")
 					.defineInRange("foundationStoneLifeSpan", 6000, 1200, Integer.MAX_VALUE);
 
+			borderDisplayMode = builder
+					.comment(" How the borders of a border stone are displayed.",
+							" BLOCKS - border blocks are placed in the world.",
+							" OUTLINE - the outlines are sent to the nearby players and rendered by the client. No blocks are placed.")
+					.defineEnum("borderDisplayMode", BorderDisplayMode.BLOCKS);
+
+			borderRefreshBudget = builder
+					.comment(" The maximum number of milliseconds per tick spent refreshing borders.",
+							" The refreshes that don't fit are carried over to the next tick.")
+					.defineInRange("borderRefreshBudget", 2.0, 0.1, 50.0);
 
 			builder.pop();
 		}
@@ -275,4 +325,48 @@ public class Config extends AbstractConfig {
 			builder.pop();
 		}
 	}
+
+	public static class Persistence {
+		public BooleanValue enableAsyncSave;
+		public BooleanValue enableJournal;
+		public IntValue journalCompactionSize;
+		public BooleanValue enableIndexCache;
+		public ForgeConfigSpec.EnumValue<ParcelStore.Type> storeType;
+		public ForgeConfigSpec.ConfigValue<String> jdbcUrl;
+
+		Persistence(final ForgeConfigSpec.Builder builder) {
+			builder.comment(CATEGORY_DIV, " Persistence properties for Claim My Land mod.", CATEGORY_DIV).push(PERSISTENCE_CATEGORY);
+
+			enableAsyncSave = builder
+					.comment(" Enables asynchronous saving. If enabled, the changed parcels are captured on the server thread,",
+							" but encoded, compressed and written to disk on a background thread.")
+					.define("enableAsyncSave", true);
+
+			enableJournal = builder
+					.comment(" Enables the parcel journal. If enabled, every parcel change is appended to a journal file,",
+							" so that changes made since the last save are recovered after a crash.")
+					.define("enableJournal", true);
+
+			journalCompactionSize = builder
+					.comment(" The size (in KB) of the journal that triggers a save of the changed parcels, after which the journal is discarded.")
+					.defineInRange("journalCompactionSize", 1024, 16, 1048576);
+
+			enableIndexCache = builder
+					.comment(" Enables the parcel index cache. If enabled, the built spatial indexes (including the buffer boxes) are saved",
+							" with the parcels and loaded directly on startup, as long as the parcels and buffer radii have not changed.")
+					.define("enableIndexCache", true);
+
+			storeType = builder
+					.comment(" The storage of the parcels. FILE = region shard files in the world save.",
+							" JDBC = a sql database. The SQLite driver is included, any other database's jdbc driver must be provided on the server's classpath.",
+							" When switching to JDBC, the parcels of the shard files are imported into an empty database.")
+					.defineEnum("storeType", ParcelStore.Type.FILE);
+
+			jdbcUrl = builder
+					.comment(" The jdbc url of the parcel database, when storeType = JDBC. {world} is replaced with the world save directory.")
+					.define("jdbcUrl", "jdbc:sqlite:{world}/data/claimmyland/parcels.db");
+
+			builder.pop();
+		}
+	}
 }
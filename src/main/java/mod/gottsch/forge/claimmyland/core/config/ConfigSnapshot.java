@@ -0,0 +1,111 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.config;
+
+import mod.gottsch.forge.claimmyland.core.block.BorderDisplayMode;
+import net.minecraftforge.common.ForgeConfigSpec;
+
+import java.util.function.Function;
+
+/**
+ * immutable snapshot of the server config values that are read on hot paths
+ * (protection events, buffer radii, border refresh).
+ * rebuilt when the server config is loaded or reloaded, so the event handlers
+ * read plain fields instead of resolving ForgeConfigSpec values.
+ */
+public final class ConfigSnapshot {
+	// the spec defaults until the server config is loaded
+	private static volatile ConfigSnapshot instance = new ConfigSnapshot(ForgeConfigSpec.ConfigValue::getDefault);
+
+	// general
+	public final int opsPermissionLevel;
+	public final int parcelBufferRadius;
+	public final int nationParcelBufferRadius;
+
+	// borders
+	public final long ticksPerBorderStoneRefresh;
+	public final BorderDisplayMode borderDisplayMode;
+	public final long borderRefreshBudgetNanos;
+
+	// protection
+	public final boolean enableBlockBreakEvent;
+	public final boolean enableEntityPlaceEvent;
+	public final boolean enableEntityMultiPlaceEvent;
+	public final boolean enableBlockToolInteractEvent;
+	public final boolean enableRightClickBlockEvent;
+	public final boolean enableLivingDestroyBlockEvent;
+	public final boolean enablePistonEvent;
+	public final boolean enableExplosionDetonateEvent;
+
+	/**
+	 *
+	 * @param value resolves a config value ie. get() or getDefault()
+	 */
+	private ConfigSnapshot(Function<ForgeConfigSpec.ConfigValue<?>, Object> value) {
+		Config.General general = Config.SERVER.general;
+		Config.Borders borders = Config.SERVER.borders;
+		Config.Protection protection = Config.SERVER.protection;
+
+		opsPermissionLevel = (Integer) value.apply(general.opsPermissionLevel);
+		parcelBufferRadius = (Integer) value.apply(general.parcelBufferRadius);
+		nationParcelBufferRadius = (Integer) value.apply(general.nationParcelBufferRadius);
+
+		ticksPerBorderStoneRefresh = (Long) value.apply(borders.ticksPerBorderStoneRefresh);
+		borderDisplayMode = (BorderDisplayMode) value.apply(borders.borderDisplayMode);
+		borderRefreshBudgetNanos = (long) ((Double) value.apply(borders.borderRefreshBudget) * 1_000_000);
+
+		enableBlockBreakEvent = (Boolean) value.apply(protection.enableBlockBreakEvent);
+		enableEntityPlaceEvent = (Boolean) value.apply(protection.enableEntityPlaceEvent);
+		enableEntityMultiPlaceEvent = (Boolean) value.apply(protection.enableEntityMultiPlaceEvent);
+		enableBlockToolInteractEvent = (Boolean) value.apply(protection.enableBlockToolInteractEvent);
+		enableRightClickBlockEvent = (Boolean) value.apply(protection.enableRightClickBlockEvent);
+		enableLivingDestroyBlockEvent = (Boolean) value.apply(protection.enableLivingDestroyBlockEvent);
+		enablePistonEvent = (Boolean) value.apply(protection.enablePistionEvent);
+		enableExplosionDetonateEvent = (Boolean) value.apply(protection.enableExplosionDetonateEvent);
+	}
+
+	/**
+	 * the current snapshot
+	 * @return
+	 */
+	public static ConfigSnapshot get() {
+		return instance;
+	}
+
+	/**
+	 * rebuilds the snapshot from the loaded server config.
+	 * @return the previous snapshot
+	 */
+	public static synchronized ConfigSnapshot rebuild() {
+		ConfigSnapshot previous = instance;
+		instance = new ConfigSnapshot(ForgeConfigSpec.ConfigValue::get);
+		return previous;
+	}
+
+	/**
+	 * true if the buffer radii of the snapshots differ ie. the buffer indexes are stale.
+	 * @param other
+	 * @return
+	 */
+	public boolean isBufferChanged(ConfigSnapshot other) {
+		return parcelBufferRadius != other.parcelBufferRadius
+				|| nationParcelBufferRadius != other.nationParcelBufferRadius;
+	}
+}
@@ -21,13 +21,20 @@ package mod.gottsch.forge.claimmyland.core.event;
 
 
 import mod.gottsch.forge.claimmyland.ClaimMyLand;
+import mod.gottsch.forge.claimmyland.core.block.entity.BorderRefreshScheduler;
+import mod.gottsch.forge.claimmyland.core.block.entity.BorderTracker;
 import mod.gottsch.forge.claimmyland.core.config.Config;
+import mod.gottsch.forge.claimmyland.core.config.ConfigSnapshot;
+import mod.gottsch.forge.claimmyland.core.network.ParcelOutlines;
+import mod.gottsch.forge.claimmyland.core.persistence.ParcelJournal;
+import mod.gottsch.forge.claimmyland.core.persistence.ParcelSaveExecutor;
 import mod.gottsch.forge.claimmyland.core.persistence.PersistedData;
 import mod.gottsch.forge.claimmyland.core.registry.ParcelRegistry;
 import mod.gottsch.forge.claimmyland.core.util.LangUtil;
 import mod.gottsch.forge.gottschcore.spatial.Coords;
 import mod.gottsch.forge.gottschcore.world.WorldInfo;
 import net.minecraft.ChatFormatting;
+import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.network.chat.Component;
@@ -39,22 +46,29 @@ import net.minecraft.world.level.Level;
 import net.minecraft.world.level.LevelAccessor;
 import net.minecraft.world.level.dimension.BuiltinDimensionTypes;
 import net.minecraft.world.level.dimension.DimensionType;
+import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.event.entity.living.LivingDestroyBlockEvent;
 import net.minecraftforge.event.entity.player.PlayerInteractEvent;
 import net.minecraftforge.event.level.BlockEvent;
+import net.minecraftforge.event.level.ChunkEvent;
+import net.minecraftforge.event.level.ChunkWatchEvent;
 import net.minecraftforge.event.level.ExplosionEvent;
 import net.minecraftforge.event.level.LevelEvent;
 import net.minecraftforge.event.level.PistonEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
 import net.minecraftforge.eventbus.api.EventPriority;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
 /**
  * Created by Mark Gottschling on Sep 14, 2024
  */
 @Mod.EventBusSubscriber(modid = ClaimMyLand.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
 public class ModEvents {
-
     @SubscribeEvent(priority = EventPriority.HIGH)
     public static void onWorldLoad(LevelEvent.Load event) {
         if (!event.getLevel().isClientSide()) {
@@ -68,6 +82,75 @@ public class ModEvents {
         }
     }
 
+    /**
+     * ensure all the pending (async) parcel writes are completed
+     * @param event
+     */
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        ParcelSaveExecutor.flush();
+        ParcelOutlines.clear();
+        BorderRefreshScheduler.clear();
+        BorderTracker.clear();
+        PersistedData.closeStore();
+        // the final save has been written, so the journal is no longer needed
+        ParcelJournal journal = ParcelRegistry.getJournal();
+        if (journal != null) {
+            journal.close();
+            ParcelRegistry.setJournal(null);
+        }
+    }
+
+    /**
+     * compacts the journal (saves the changed shards) once the current segment grows too large,
+     * rather than waiting for the next world save.
+     * @param event
+     */
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) {
+            return;
+        }
+        ParcelJournal journal = ParcelRegistry.getJournal();
+        if (journal != null && journal.isCompactionRequired()) {
+            PersistedData.get(event.getServer().overworld()).saveParcels();
+        }
+        BorderRefreshScheduler.tick(event.getServer());
+        // send the border outlines placed this tick
+        ParcelOutlines.flush(event.getServer());
+    }
+
+    /**
+     * sends the active border outlines of the chunk to the player that starts tracking it
+     * @param event
+     */
+    @SubscribeEvent
+    public static void onChunkWatch(ChunkWatchEvent.Watch event) {
+        ParcelOutlines.sendChunk(event.getPlayer(), event.getLevel(), event.getPos());
+    }
+
+    /**
+     * the placed borders in a loaded chunk are verified on their next refresh
+     * @param event
+     */
+    @SubscribeEvent
+    public static void onChunkLoad(ChunkEvent.Load event) {
+        if (event.getLevel() instanceof Level level && !level.isClientSide()) {
+            BorderTracker.onChunkLoad(level, event.getChunk().getPos());
+        }
+    }
+
+    /**
+     * a changed block at a placed border position is verified on the next refresh of its border stone
+     * @param event
+     */
+    @SubscribeEvent
+    public static void onNeighborNotify(BlockEvent.NeighborNotifyEvent event) {
+        if (event.getLevel() instanceof Level level && !level.isClientSide()) {
+            BorderTracker.onBlockChanged(level, event.getPos(), event.getState());
+        }
+    }
+
     @SubscribeEvent
     public static void onBlockBreak(final BlockEvent.BreakEvent event) {
         if (ClaimMyLand.LOGGER.isDebugEnabled()) {
@@ -75,7 +158,7 @@ public class ModEvents {
         }
 
         // execute if event is enabled
-        if (!Config.SERVER.protection.enableBlockBreakEvent.get()) {
+        if (!ConfigSnapshot.get().enableBlockBreakEvent) {
             return;
         }
 
@@ -85,7 +168,7 @@ public class ModEvents {
         }
 
         // prevent protected blocks from breaking
-        if (!ParcelRegistry.hasAccess(Coords.of(event.getPos()), event.getPlayer().getUUID())) {
+        if (!ParcelRegistry.hasAccess(event.getPos().getX(), event.getPos().getY(), event.getPos().getZ(), event.getPlayer().getUUID())) {
             event.setCanceled(true);
             if (ClaimMyLand.LOGGER.isDebugEnabled()) {
 //                ClaimMyLand.LOGGER.debug("denied block break -> {} @ {}", event.getPlayer().getDisplayName().getString(), Coords.of(event.getPos()).toShortString());
@@ -102,7 +185,7 @@ public class ModEvents {
 //            ClaimMyLand.LOGGER.debug("attempt to place block by player -> {} @ {}", event.getEntity().getDisplayName().getString(), Coords.of(event.getPos()).toShortString());
         }
 
-        if (!Config.SERVER.protection.enableEntityPlaceEvent.get()
+        if (!ConfigSnapshot.get().enableEntityPlaceEvent
 //				|| event.getEntity().hasPermissions(Config.GENERAL.opsPermissionLevel.get())
         ) {
             return;
@@ -115,7 +198,7 @@ public class ModEvents {
 
         // prevent protected blocks from placing
         if (event.getEntity() instanceof Player) {
-            if (!ParcelRegistry.hasAccess(Coords.of(event.getPos()), event.getEntity().getUUID(), ((Player) event.getEntity()).getItemInHand(InteractionHand.MAIN_HAND))) {
+            if (!ParcelRegistry.hasAccess(event.getPos().getX(), event.getPos().getY(), event.getPos().getZ(), event.getEntity().getUUID(), ((Player) event.getEntity()).getItemInHand(InteractionHand.MAIN_HAND))) {
                 event.setCanceled(true);
                 if (ClaimMyLand.LOGGER.isDebugEnabled()) {
 //                    ClaimMyLand.LOGGER.debug("denied block place -> {} @ {}", event.getEntity().getDisplayName().getString(), Coords.of(event.getPos()).toShortString());
@@ -125,7 +208,7 @@ public class ModEvents {
                 }
             }
         }
-        else if (ParcelRegistry.intersectsParcel(Coords.of(event.getPos()))) {
+        else if (ParcelRegistry.intersectsParcel(event.getPos().getX(), event.getPos().getY(), event.getPos().getZ())) {
             event.setCanceled(true);
         }
 
@@ -134,8 +217,8 @@ public class ModEvents {
 
     @SubscribeEvent
     public void onMutliBlockPlace(final BlockEvent.EntityMultiPlaceEvent event) {
-        if (!Config.SERVER.protection.enableEntityMultiPlaceEvent.get()
-                || event.getEntity().hasPermissions(Config.SERVER.general.opsPermissionLevel.get()) ) {
+        if (!ConfigSnapshot.get().enableEntityMultiPlaceEvent
+                || event.getEntity().hasPermissions(ConfigSnapshot.get().opsPermissionLevel) ) {
             return;
         }
 
@@ -146,7 +229,7 @@ public class ModEvents {
 
         // prevent parcel blocks from breaking
         if (event.getEntity() instanceof Player) {
-            if (!ParcelRegistry.hasAccess(Coords.of(event.getPos()), event.getEntity().getUUID())) {
+            if (!ParcelRegistry.hasAccess(event.getPos().getX(), event.getPos().getY(), event.getPos().getZ(), event.getEntity().getUUID())) {
                 event.setCanceled(true);
                 if (!event.getLevel().isClientSide()) {
                     if (ClaimMyLand.LOGGER.isDebugEnabled()) {
@@ -156,15 +239,15 @@ public class ModEvents {
                 }
             }
         }
-        else if (ParcelRegistry.intersectsParcel(Coords.of(event.getPos()))) {
+        else if (ParcelRegistry.intersectsParcel(event.getPos().getX(), event.getPos().getY(), event.getPos().getZ())) {
             event.setCanceled(true);
         }
     }
 
     @SubscribeEvent
     public void onToolInteract(final BlockEvent.BlockToolModificationEvent event) {
-        if (!Config.SERVER.protection.enableBlockToolInteractEvent.get()
-                || event.getPlayer().hasPermissions(Config.SERVER.general.opsPermissionLevel.get())) {
+        if (!ConfigSnapshot.get().enableBlockToolInteractEvent
+                || event.getPlayer().hasPermissions(ConfigSnapshot.get().opsPermissionLevel)) {
             return;
         }
 
@@ -174,7 +257,7 @@ public class ModEvents {
         }
 
         ItemStack heldItemStack = event.getHeldItemStack();
-        if (!ParcelRegistry.hasAccess(Coords.of(event.getPos()), event.getPlayer().getUUID(), heldItemStack)) {
+        if (!ParcelRegistry.hasAccess(event.getPos().getX(), event.getPos().getY(), event.getPos().getZ(), event.getPlayer().getUUID(), heldItemStack)) {
             event.setCanceled(true);
             if (ClaimMyLand.LOGGER.isDebugEnabled()) {
                 ClaimMyLand.LOGGER.debug("denied tool interact -> {}", event.getPlayer().getDisplayName().getString(), Coords.of(event.getPos()).toShortString());
@@ -187,8 +270,8 @@ public class ModEvents {
 
     @SubscribeEvent
     public void onPlayerInteract(final PlayerInteractEvent.RightClickBlock event) {
-        if (!Config.SERVER.protection.enableRightClickBlockEvent.get()
-                || event.getEntity().hasPermissions(Config.SERVER.general.opsPermissionLevel.get())) {
+        if (!ConfigSnapshot.get().enableRightClickBlockEvent
+                || event.getEntity().hasPermissions(ConfigSnapshot.get().opsPermissionLevel)) {
             return;
         }
 
@@ -201,7 +284,7 @@ public class ModEvents {
         if (event.getEntity() instanceof Player) {
 
             // get the item in the player's hand
-            if (!ParcelRegistry.hasAccess(Coords.of(event.getPos()), event.getEntity().getUUID())) {
+            if (!ParcelRegistry.hasAccess(event.getPos().getX(), event.getPos().getY(), event.getPos().getZ(), event.getEntity().getUUID())) {
                 event.setCanceled(true);
                 if (ClaimMyLand.LOGGER.isDebugEnabled()) {
                     ClaimMyLand.LOGGER.debug("denied right click -> {} @ {} w/ hand -> {}", event.getEntity().getDisplayName().getString(), Coords.of(event.getPos()).toShortString(), event.getHand().toString());
@@ -213,7 +296,7 @@ public class ModEvents {
                 }
             }
         }
-        else if (ParcelRegistry.intersectsParcel(Coords.of(event.getPos()))) {
+        else if (ParcelRegistry.intersectsParcel(event.getPos().getX(), event.getPos().getY(), event.getPos().getZ())) {
             event.setCanceled(true);
         }
     }
@@ -221,8 +304,8 @@ public class ModEvents {
     @SubscribeEvent
     public void onLivingDestroyBlock(final LivingDestroyBlockEvent event) {
         // prevent protected blocks from breaking by mob action
-        if (Config.SERVER.protection.enableLivingDestroyBlockEvent.get()
-                && ParcelRegistry.intersectsParcel(Coords.of(event.getPos()))) {
+        if (ConfigSnapshot.get().enableLivingDestroyBlockEvent
+                && ParcelRegistry.intersectsParcel(event.getPos().getX(), event.getPos().getY(), event.getPos().getZ())) {
             // check dimension
             if (event.getEntity().level().dimensionTypeId() == BuiltinDimensionTypes.OVERWORLD) {
                 event.setCanceled(true);
@@ -232,7 +315,7 @@ public class ModEvents {
 
     @SubscribeEvent
     public void onPiston(final PistonEvent.Pre event) {
-        if (!Config.SERVER.protection.enablePistionEvent.get()) {
+        if (!ConfigSnapshot.get().enablePistonEvent) {
             return;
         }
 
@@ -246,60 +329,50 @@ public class ModEvents {
         }
 
         // check if piston itself is inside protected area - if so, exit ie. allow movement
-        if (ParcelRegistry.intersectsParcel(Coords.of(event.getPos()))) {
+        if (ParcelRegistry.intersectsParcel(event.getPos().getX(), event.getPos().getY(), event.getPos().getZ())) {
             return;
         }
 
         if (event.getPistonMoveType() == PistonEvent.PistonMoveType.EXTEND) {
-            for (int count = 1; count <=12; count++) {
-                int xOffset = 0;
-                int zOffset = 0;
-                int xPush = 0;
-                int zPush = 0;
-                switch(event.getDirection()) {
-                    default:
-                    case NORTH:
-                        zOffset = -count;
-                        zPush = -1;
-                        break;
-                    case SOUTH:
-                        zOffset = count;
-                        zPush = +1;
-                        break;
-                    case WEST:
-                        xOffset = -count;
-                        xPush = -1;
-                        break;
-                    case EAST:
-                        xOffset = count;
-                        xPush = 1;
-                        break;
-                }
+            // count the solid blocks that will be pushed (max 12)
+            BlockPos.MutableBlockPos cursor = event.getPos().mutable();
+            int pushed = 0;
+            while (pushed < 12 && event.getLevel().getBlockState(cursor.move(event.getDirection())).isSolid()) {
+                pushed++;
+            }
+            if (pushed == 0) {
+                return;
+            }
 
-                if (event.getLevel().getBlockState(event.getPos().offset(xOffset, 0, zOffset)).isSolid()) {
-                    // prevent protected blocks from breaking
-                    if (ParcelRegistry.intersectsParcel(Coords.of(event.getPos().offset(xOffset, 0, zOffset))) ||
-                            ParcelRegistry.intersectsParcel(Coords.of(event.getPos().offset(xOffset + xPush, 0, zOffset + zPush)))) {
-                        event.setCanceled(true);
-                        return;
-                    }
-                }
-                else {
-                    return;
-                }
+            // prevent protected blocks from moving ie. the pushed blocks and the position the last block is pushed into
+            BlockPos first = event.getPos().relative(event.getDirection());
+            if (ParcelRegistry.findFirstIntersection(first.getX(), first.getY(), first.getZ(), event.getDirection(), pushed + 1) >= 0) {
+                event.setCanceled(true);
             }
         }
     }
 
     @SubscribeEvent
     public void onExplosion(final ExplosionEvent.Detonate event) {
+        if (!ConfigSnapshot.get().enableExplosionDetonateEvent
+                || event.getLevel().dimensionTypeId() == BuiltinDimensionTypes.OVERWORLD) {
+            return;
+        }
+
         // remove any affected blocks that are protected
-        event.getAffectedBlocks().removeIf(block -> {
-            // prevent protected blocks from breaking
-            return Config.SERVER.protection.enableExplosionDetonateEvent.get()
-                    && event.getLevel().dimensionTypeId() != BuiltinDimensionTypes.OVERWORLD
-                    && ParcelRegistry.intersectsParcel(Coords.of(block.getX(), block.getY(), block.getZ()));
-        });
+        List<BlockPos> affectedBlocks = event.getAffectedBlocks();
+        BitSet protectedBlocks = ParcelRegistry.intersectsParcels(affectedBlocks);
+        if (protectedBlocks.isEmpty()) {
+            return;
+        }
+        List<BlockPos> unprotectedBlocks = new ArrayList<>(affectedBlocks.size() - protectedBlocks.cardinality());
+        for (int i = 0; i < affectedBlocks.size(); i++) {
+            if (!protectedBlocks.get(i)) {
+                unprotectedBlocks.add(affectedBlocks.get(i));
+            }
+        }
+        affectedBlocks.clear();
+        affectedBlocks.addAll(unprotectedBlocks);
     }
 
     /**
@@ -36,9 +36,11 @@ import net.minecraft.world.entity.item.ItemEntity;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.item.ItemStack;
 import net.minecraftforge.event.entity.EntityJoinLevelEvent;
+import net.minecraftforge.event.entity.EntityLeaveLevelEvent;
 import net.minecraftforge.event.entity.item.ItemEvent;
 import net.minecraftforge.event.entity.living.LivingHurtEvent;
 import net.minecraftforge.event.entity.living.MobSpawnEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
 import net.minecraftforge.eventbus.api.Event.Result;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod.EventBusSubscriber;
@@ -95,7 +97,7 @@ public class PlayerEvents {
 			if (event.getSource().getEntity() instanceof Mob) {
 				// prevent mob from hurting player
 				// NOTE for now ALL parcels are protected against hurt events
-				if (ParcelRegistry.intersectsParcel(Coords.of(player.blockPosition()))) {
+				if (ParcelRegistry.intersectsParcel(player.getBlockX(), player.getBlockY(), player.getBlockZ())) {
 					event.setCanceled(true);
 //					ProtectIt.LOGGER.debug("denied mob attack -> {} @ {}", event.getEntity().getDisplayName().getString(), new Coords(player.blockPosition()).toShortString());
 				}
@@ -104,7 +106,7 @@ public class PlayerEvents {
 			else if (event.getSource().getEntity() instanceof Player) {
 				// prevent player from hurting player
 				// NOTE for now ALL parcels are protected against hurt events
-				if (ParcelRegistry.intersectsParcel(Coords.of(player.blockPosition()))) {
+				if (ParcelRegistry.intersectsParcel(player.getBlockX(), player.getBlockY(), player.getBlockZ())) {
 					event.setCanceled(true);
 //					ProtectIt.LOGGER.debug("denied player attack -> {} @ {}", event.getEntity().getDisplayName().getString(), new Coords(player.blockPosition()).toShortString());
 				}
@@ -112,10 +114,23 @@ public class PlayerEvents {
 		}
 	}
 
+	@SubscribeEvent
+	public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+		ParcelRegistry.invalidateLookup(event.getEntity().getUUID());
+	}
+
+	// ie. unloaded, killed or changed dimension
+	@SubscribeEvent
+	public static void onEntityLeaveLevel(EntityLeaveLevelEvent event) {
+		if (!event.getLevel().isClientSide()) {
+			ParcelRegistry.invalidateLookup(event.getEntity().getUUID());
+		}
+	}
+
 	// NOTE for now ALL parcels are protected against mob spawns
 	@SubscribeEvent
 	public static void onSpawnEntity(MobSpawnEvent.FinalizeSpawn event) {
-		if (ParcelRegistry.intersectsParcel(Coords.of(event.getEntity().blockPosition()))) {
+		if (ParcelRegistry.intersectsParcel(event.getEntity().getBlockX(), event.getEntity().getBlockY(), event.getEntity().getBlockZ())) {
 			event.setResult(Result.DENY);
 			event.setSpawnCancelled(true);
 //			ProtectIt.LOGGER.debug("denied mob spawn -> {} @ {}", event.getEntity().getDisplayName().getString(), new Coords(event.getEntity().blockPosition()).toShortString());
@@ -221,6 +221,8 @@ public abstract class Deed extends Item {
                     parcel.setOwnerTime(context.getLevel().getGameTime());
                     // clear abandonedTime (if any)
                     parcel.setAbandonedTime(0L);
+                    // journal the times, as they are set after the claim was registered
+                    ParcelRegistry.markDirty(parcel);
 
                     // register user name
                     PlayerRegistry.register(context.getPlayer().getUUID(), context.getPlayer().getScoreboardName());
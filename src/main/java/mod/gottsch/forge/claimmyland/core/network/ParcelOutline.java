@@ -0,0 +1,134 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.network;
+
+import mod.gottsch.forge.claimmyland.core.block.BorderStatus;
+import mod.gottsch.forge.claimmyland.core.parcel.ParcelType;
+import mod.gottsch.forge.gottschcore.spatial.Box;
+import net.minecraft.network.FriendlyByteBuf;
+
+/**
+ * the outline of a border or buffer box (inclusive block coords).
+ * encoded as the min coords, the size as varints, and one byte of flags.
+ */
+public class ParcelOutline {
+    private static final int BUFFER = 1;
+    private static final int BAD = 1 << 1;
+    private static final int TYPE_SHIFT = 2;
+    private static final ParcelType[] TYPES = ParcelType.values();
+
+    private final int minX;
+    private final int minY;
+    private final int minZ;
+    private final int maxX;
+    private final int maxY;
+    private final int maxZ;
+    private final boolean buffer;
+    private final ParcelType type;
+    private final BorderStatus status;
+
+    public ParcelOutline(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, boolean buffer, ParcelType type, BorderStatus status) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+        this.buffer = buffer;
+        this.type = type;
+        this.status = status;
+    }
+
+    public ParcelOutline(Box box, boolean buffer, ParcelType type, BorderStatus status) {
+        this(box.getMinCoords().getX(), box.getMinCoords().getY(), box.getMinCoords().getZ(),
+                box.getMaxCoords().getX(), box.getMaxCoords().getY(), box.getMaxCoords().getZ(), buffer, type, status);
+    }
+
+    public void encode(FriendlyByteBuf buf) {
+        buf.writeInt(minX);
+        buf.writeInt(minY);
+        buf.writeInt(minZ);
+        buf.writeVarInt(maxX - minX);
+        buf.writeVarInt(maxY - minY);
+        buf.writeVarInt(maxZ - minZ);
+        int flags = type.ordinal() << TYPE_SHIFT;
+        if (buffer) flags |= BUFFER;
+        if (status == BorderStatus.BAD) flags |= BAD;
+        buf.writeByte(flags);
+    }
+
+    public static ParcelOutline decode(FriendlyByteBuf buf) {
+        int minX = buf.readInt();
+        int minY = buf.readInt();
+        int minZ = buf.readInt();
+        int maxX = minX + buf.readVarInt();
+        int maxY = minY + buf.readVarInt();
+        int maxZ = minZ + buf.readVarInt();
+        int flags = buf.readUnsignedByte();
+        int type = flags >> TYPE_SHIFT;
+        return new ParcelOutline(minX, minY, minZ, maxX, maxY, maxZ, (flags & BUFFER) != 0,
+                type < TYPES.length ? TYPES[type] : ParcelType.PLAYER,
+                (flags & BAD) != 0 ? BorderStatus.BAD : BorderStatus.GOOD);
+    }
+
+    /**
+     * true if the outline is of the box
+     */
+    public boolean matches(Box box) {
+        return minX == box.getMinCoords().getX() && minY == box.getMinCoords().getY() && minZ == box.getMinCoords().getZ()
+                && maxX == box.getMaxCoords().getX() && maxY == box.getMaxCoords().getY() && maxZ == box.getMaxCoords().getZ();
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMinZ() {
+        return minZ;
+    }
+
+    public int getMaxX() {
+        return maxX;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    public int getMaxZ() {
+        return maxZ;
+    }
+
+    public boolean isBuffer() {
+        return buffer;
+    }
+
+    public ParcelType getType() {
+        return type;
+    }
+
+    public BorderStatus getStatus() {
+        return status;
+    }
+}
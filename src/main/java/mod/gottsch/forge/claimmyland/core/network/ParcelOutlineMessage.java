@@ -0,0 +1,90 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.network;
+
+import mod.gottsch.forge.claimmyland.core.client.ParcelOutlineRenderer;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.fml.DistExecutor;
+import net.minecraftforge.network.NetworkEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * the border and buffer outlines of a border stone (the source).
+ * replaces any previous outlines of the source. no outlines removes the source's outlines.
+ */
+public class ParcelOutlineMessage {
+    private final BlockPos source;
+    // the number of ticks the outlines are displayed, unless they are replaced or removed
+    private final int lifetime;
+    private final List<ParcelOutline> outlines;
+
+    public ParcelOutlineMessage(BlockPos source, int lifetime, List<ParcelOutline> outlines) {
+        this.source = source;
+        this.lifetime = lifetime;
+        this.outlines = outlines;
+    }
+
+    /**
+     * removes the outlines of the source
+     */
+    public static ParcelOutlineMessage remove(BlockPos source) {
+        return new ParcelOutlineMessage(source, 0, List.of());
+    }
+
+    public void encode(FriendlyByteBuf buf) {
+        buf.writeBlockPos(source);
+        buf.writeVarInt(lifetime);
+        buf.writeVarInt(outlines.size());
+        outlines.forEach(outline -> outline.encode(buf));
+    }
+
+    public static ParcelOutlineMessage decode(FriendlyByteBuf buf) {
+        BlockPos source = buf.readBlockPos();
+        int lifetime = buf.readVarInt();
+        int size = buf.readVarInt();
+        List<ParcelOutline> outlines = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            outlines.add(ParcelOutline.decode(buf));
+        }
+        return new ParcelOutlineMessage(source, lifetime, outlines);
+    }
+
+    public void handle(Supplier<NetworkEvent.Context> context) {
+        DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> ParcelOutlineRenderer.handle(this));
+        context.get().setPacketHandled(true);
+    }
+
+    public BlockPos getSource() {
+        return source;
+    }
+
+    public int getLifetime() {
+        return lifetime;
+    }
+
+    public List<ParcelOutline> getOutlines() {
+        return outlines;
+    }
+}
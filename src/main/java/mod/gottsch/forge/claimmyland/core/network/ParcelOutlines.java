@@ -0,0 +1,188 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.network;
+
+import mod.gottsch.forge.claimmyland.core.block.BorderBlock;
+import mod.gottsch.forge.claimmyland.core.block.BorderStatus;
+import mod.gottsch.forge.claimmyland.core.block.ModBlocks;
+import mod.gottsch.forge.claimmyland.core.parcel.ParcelType;
+import mod.gottsch.forge.gottschcore.spatial.Box;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraftforge.network.PacketDistributor;
+
+import java.util.*;
+
+/**
+ * server side tracking of the displayed border outlines (BorderDisplayMode.OUTLINE), by border stone.
+ * the outlines added in a tick are sent as one message per border stone at the end of the tick,
+ * to the players tracking the border stone's chunk. players that start tracking the chunk later are sent
+ * the active outlines. removing the outlines of a border stone is a single message.
+ */
+public class ParcelOutlines {
+
+    private static class Source {
+        private final List<ParcelOutline> outlines = new ArrayList<>(2);
+        // the game time the outlines were added, a later add replaces the outlines
+        private long addTime;
+        private long expireTime;
+        private boolean changed;
+    }
+
+    private static final Map<ResourceKey<Level>, Map<BlockPos, Source>> SOURCES = new HashMap<>();
+
+    private ParcelOutlines() {}
+
+    /**
+     * adds the outline of a border/buffer box with the state of the border/buffer block it replaces.
+     * @param level
+     * @param source the position of the border stone
+     * @param box
+     * @param state
+     * @param expireTime the game time the border stone expires
+     */
+    public static synchronized void add(Level level, BlockPos source, Box box, BlockState state, long expireTime) {
+        if (level.isClientSide()) {
+            return;
+        }
+        Source entry = SOURCES.computeIfAbsent(level.dimension(), k -> new HashMap<>())
+                .computeIfAbsent(source.immutable(), k -> new Source());
+        long time = level.getGameTime();
+        if (entry.addTime != time) {
+            entry.outlines.clear();
+            entry.addTime = time;
+        }
+        entry.outlines.add(new ParcelOutline(box, state.is(ModBlocks.BUFFER.get()), getParcelType(state),
+                state.hasProperty(BorderBlock.INTERSECTS) ? state.getValue(BorderBlock.INTERSECTS) : BorderStatus.GOOD));
+        entry.expireTime = expireTime;
+        entry.changed = true;
+    }
+
+    private static ParcelType getParcelType(BlockState state) {
+        if (state.is(ModBlocks.NATION_BORDER.get())) {
+            return ParcelType.NATION;
+        } else if (state.is(ModBlocks.CITIZEN_BORDER.get())) {
+            return ParcelType.CITIZEN;
+        } else if (state.is(ModBlocks.ZONE_BORDER.get())) {
+            return ParcelType.ZONE;
+        }
+        return ParcelType.PLAYER;
+    }
+
+    /**
+     * removes the outlines of the border stone
+     * @param level
+     * @param source
+     */
+    public static synchronized void remove(Level level, BlockPos source) {
+        if (level.isClientSide()) {
+            return;
+        }
+        Map<BlockPos, Source> sources = SOURCES.get(level.dimension());
+        if (sources != null && sources.remove(source) != null) {
+            ModNetworking.CHANNEL.send(PacketDistributor.DIMENSION.with(level::dimension), ParcelOutlineMessage.remove(source));
+        }
+    }
+
+    /**
+     * removes the outlines of any border stone that has an outline of the box
+     * @param level
+     * @param box
+     */
+    public static synchronized void remove(Level level, Box box) {
+        if (level.isClientSide()) {
+            return;
+        }
+        Map<BlockPos, Source> sources = SOURCES.get(level.dimension());
+        if (sources == null) {
+            return;
+        }
+        Iterator<Map.Entry<BlockPos, Source>> iterator = sources.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<BlockPos, Source> entry = iterator.next();
+            if (entry.getValue().outlines.stream().anyMatch(outline -> outline.matches(box))) {
+                iterator.remove();
+                ModNetworking.CHANNEL.send(PacketDistributor.DIMENSION.with(level::dimension), ParcelOutlineMessage.remove(entry.getKey()));
+            }
+        }
+    }
+
+    /**
+     * sends the outlines that changed this tick, and drops the expired outlines. called at the end of the server tick.
+     * @param server
+     */
+    public static synchronized void flush(MinecraftServer server) {
+        for (Map.Entry<ResourceKey<Level>, Map<BlockPos, Source>> dimension : SOURCES.entrySet()) {
+            ServerLevel level = server.getLevel(dimension.getKey());
+            if (level == null) {
+                continue;
+            }
+            long time = level.getGameTime();
+            Iterator<Map.Entry<BlockPos, Source>> iterator = dimension.getValue().entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<BlockPos, Source> entry = iterator.next();
+                Source source = entry.getValue();
+                if (time > source.expireTime) {
+                    // the clients expire the outlines themselves
+                    iterator.remove();
+                } else if (source.changed) {
+                    source.changed = false;
+                    ModNetworking.CHANNEL.send(PacketDistributor.TRACKING_CHUNK.with(() -> level.getChunkAt(entry.getKey())),
+                            createMessage(entry.getKey(), source, time));
+                }
+            }
+        }
+    }
+
+    /**
+     * sends the active outlines in the chunk to a player that starts tracking the chunk
+     * @param player
+     * @param level
+     * @param chunkPos
+     */
+    public static synchronized void sendChunk(ServerPlayer player, ServerLevel level, ChunkPos chunkPos) {
+        Map<BlockPos, Source> sources = SOURCES.get(level.dimension());
+        if (sources == null || sources.isEmpty()) {
+            return;
+        }
+        long time = level.getGameTime();
+        sources.forEach((pos, source) -> {
+            if (!source.changed && time <= source.expireTime
+                    && (pos.getX() >> 4) == chunkPos.x && (pos.getZ() >> 4) == chunkPos.z) {
+                ModNetworking.CHANNEL.send(PacketDistributor.PLAYER.with(() -> player), createMessage(pos, source, time));
+            }
+        });
+    }
+
+    private static ParcelOutlineMessage createMessage(BlockPos pos, Source source, long time) {
+        int lifetime = (int) Math.min(Integer.MAX_VALUE, Math.max(1, source.expireTime - time));
+        return new ParcelOutlineMessage(pos, lifetime, List.copyOf(source.outlines));
+    }
+
+    public static synchronized void clear() {
+        SOURCES.clear();
+    }
+}
@@ -111,8 +111,15 @@ public abstract class AbstractParcel implements Parcel {
         else if (getOwnerId().equals(entityId)) {
             return true;
         } else {
-            // or the owener's whitelist has access
-            return getWhitelist().stream().anyMatch(uuid -> uuid.equals(entityId));
+            // or the owener's whitelist has access.
+            // NOTE indexed loop as this is called on every protection check
+            List<UUID> whitelist = getWhitelist();
+            for (int i = 0; i < whitelist.size(); i++) {
+                if (whitelist.get(i).equals(entityId)) {
+                    return true;
+                }
+            }
+            return false;
         }
     }
 
@@ -22,7 +22,7 @@ package mod.gottsch.forge.claimmyland.core.parcel;
 import mod.gottsch.forge.claimmyland.ClaimMyLand;
 import mod.gottsch.forge.claimmyland.core.block.entity.FoundationStoneBlockEntity;
 import mod.gottsch.forge.claimmyland.core.command.CommandHelper;
-import mod.gottsch.forge.claimmyland.core.config.Config;
+import mod.gottsch.forge.claimmyland.core.config.ConfigSnapshot;
 import mod.gottsch.forge.claimmyland.core.registry.ParcelRegistry;
 import mod.gottsch.forge.claimmyland.core.util.ModUtil;
 import mod.gottsch.forge.gottschcore.spatial.Box;
@@ -157,6 +157,6 @@ public class CitizenParcel extends AbstractParcel {
 
     @Override
     public int getBufferSize() {
-        return Config.SERVER.general.parcelBufferRadius.get();
+        return ConfigSnapshot.get().parcelBufferRadius;
     }
 }
@@ -21,7 +21,7 @@ package mod.gottsch.forge.claimmyland.core.parcel;
 
 import mod.gottsch.forge.claimmyland.ClaimMyLand;
 import mod.gottsch.forge.claimmyland.core.block.entity.FoundationStoneBlockEntity;
-import mod.gottsch.forge.claimmyland.core.config.Config;
+import mod.gottsch.forge.claimmyland.core.config.ConfigSnapshot;
 import mod.gottsch.forge.claimmyland.core.registry.ParcelRegistry;
 import mod.gottsch.forge.claimmyland.core.util.ModUtil;
 import mod.gottsch.forge.gottschcore.spatial.Box;
@@ -182,7 +182,7 @@ public class NationParcel extends AbstractParcel implements INationParcel {
 
     @Override
     public int getBufferSize() {
-        return Config.SERVER.general.nationParcelBufferRadius.get();
+        return ConfigSnapshot.get().nationParcelBufferRadius;
     }
 
     @Override
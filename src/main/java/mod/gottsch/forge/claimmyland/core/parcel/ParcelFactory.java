@@ -34,23 +34,31 @@ public class ParcelFactory {
     public static Optional<Parcel> create(CompoundTag tag) {
         if (tag.contains(AbstractParcel.TYPE)) {
             String type = tag.getString(AbstractParcel.TYPE);
-
-            if (type.equalsIgnoreCase(ParcelType.PLAYER.getSerializedName())) {
-                return Optional.of(new PlayerParcel());
-            }
-            else if (type.equalsIgnoreCase(ParcelType.CITIZEN.getSerializedName())) {
-                return Optional.of(new CitizenParcel());
-            }
-            else if (type.equalsIgnoreCase(ParcelType.NATION.getSerializedName())) {
-                return Optional.of(new NationParcel());
-            }
-            else if (type.equalsIgnoreCase(ParcelType.ZONE.getSerializedName())) {
-                return Optional.of(new ZoneParcel());
+            for (ParcelType parcelType : ParcelType.values()) {
+                if (type.equalsIgnoreCase(parcelType.getSerializedName())) {
+                    return createEmpty(parcelType);
+                }
             }
         }
         return Optional.empty();
     }
 
+    /**
+     * creates a parcel of the type without any generated values (id, name),
+     * ie. to be populated by a load.
+     * @param type
+     * @return
+     */
+    public static Optional<Parcel> createEmpty(ParcelType type) {
+        return switch (type) {
+            case PLAYER -> Optional.of(new PlayerParcel());
+            case NATION -> Optional.of(new NationParcel());
+            case CITIZEN -> Optional.of(new CitizenParcel());
+            case ZONE -> Optional.of(new ZoneParcel());
+            default -> Optional.empty();
+        };
+    }
+
     public static Optional<Parcel> create(ParcelType type) {
         return create(type, null);
     }
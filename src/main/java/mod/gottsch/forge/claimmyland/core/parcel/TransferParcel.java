@@ -1,7 +1,7 @@
 package mod.gottsch.forge.claimmyland.core.parcel;
 
 import mod.gottsch.forge.claimmyland.core.block.entity.FoundationStoneBlockEntity;
-import mod.gottsch.forge.claimmyland.core.config.Config;
+import mod.gottsch.forge.claimmyland.core.config.ConfigSnapshot;
 
 import java.util.UUID;
 
@@ -31,7 +31,7 @@ public class TransferParcel extends AbstractParcel {
 
     @Override
     public int getBufferSize() {
-        return Config.SERVER.general.nationParcelBufferRadius.get();
+        return ConfigSnapshot.get().nationParcelBufferRadius;
     }
 
     public UUID getNationId() {
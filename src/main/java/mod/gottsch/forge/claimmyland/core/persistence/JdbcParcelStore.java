@@ -0,0 +1,327 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.persistence;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import mod.gottsch.forge.claimmyland.ClaimMyLand;
+import mod.gottsch.forge.claimmyland.core.parcel.NationParcel;
+import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
+import mod.gottsch.forge.gottschcore.spatial.Box;
+
+import java.io.*;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * parcel store backed by a sql database via jdbc.
+ * the SQLite driver is bundled with the mod; any other database's driver must be on the server's classpath.
+ * each parcel is a row of queryable columns (owner, nation, absolute bounds) plus its encoded form,
+ * which is what the registry is loaded from. the whitelists and nations are in their own tables,
+ * so the data can be queried offline ie. by admin tools, and the absolute bounds are indexed for find().
+ * a changed shard is written as a batch in one transaction: its rows are deleted and re-inserted.
+ */
+public class JdbcParcelStore implements ParcelStore {
+	private static final String[] SCHEMA = {
+			"CREATE TABLE IF NOT EXISTS cml_parcel ("
+					+ "id CHAR(36) PRIMARY KEY, shard_key BIGINT NOT NULL, type VARCHAR(16) NOT NULL, name VARCHAR(255),"
+					+ " owner_id CHAR(36), nation_id CHAR(36), deed_id CHAR(36),"
+					+ " min_x INT NOT NULL, min_y INT NOT NULL, min_z INT NOT NULL, max_x INT NOT NULL, max_y INT NOT NULL, max_z INT NOT NULL,"
+					+ " founded_time BIGINT, owner_time BIGINT, abandoned_time BIGINT, data BLOB NOT NULL)",
+			// the shard key prefix also serves the per-shard loads and deletes
+			"DROP INDEX IF EXISTS cml_parcel_shard",
+			"CREATE INDEX IF NOT EXISTS cml_parcel_shard_bounds ON cml_parcel (shard_key, min_x, max_x, min_z, max_z)",
+			// a parcel is stored by the shard of its coords, but can extend into any shard, so a bounds query can't use the shard key
+			"CREATE INDEX IF NOT EXISTS cml_parcel_bounds ON cml_parcel (min_x, max_x, min_z, max_z)",
+			"CREATE INDEX IF NOT EXISTS cml_parcel_owner ON cml_parcel (owner_id)",
+			"CREATE INDEX IF NOT EXISTS cml_parcel_nation ON cml_parcel (nation_id)",
+			"CREATE TABLE IF NOT EXISTS cml_parcel_whitelist ("
+					+ "parcel_id CHAR(36) NOT NULL, player_id CHAR(36) NOT NULL, shard_key BIGINT NOT NULL)",
+			"CREATE INDEX IF NOT EXISTS cml_parcel_whitelist_parcel ON cml_parcel_whitelist (parcel_id)",
+			"CREATE INDEX IF NOT EXISTS cml_parcel_whitelist_player ON cml_parcel_whitelist (player_id)",
+			"CREATE INDEX IF NOT EXISTS cml_parcel_whitelist_shard ON cml_parcel_whitelist (shard_key)",
+			"CREATE TABLE IF NOT EXISTS cml_nation ("
+					+ "parcel_id CHAR(36) PRIMARY KEY, nation_id CHAR(36), border_type VARCHAR(16), shard_key BIGINT NOT NULL)",
+			"CREATE INDEX IF NOT EXISTS cml_nation_id ON cml_nation (nation_id)",
+			"CREATE INDEX IF NOT EXISTS cml_nation_shard ON cml_nation (shard_key)",
+			"CREATE TABLE IF NOT EXISTS cml_shard (shard_key BIGINT PRIMARY KEY, checksum INT NOT NULL)"
+	};
+
+	private static final String INSERT_PARCEL = "INSERT INTO cml_parcel (id, shard_key, type, name, owner_id, nation_id, deed_id,"
+			+ " min_x, min_y, min_z, max_x, max_y, max_z, founded_time, owner_time, abandoned_time, data)"
+			+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	private static final String INSERT_WHITELIST = "INSERT INTO cml_parcel_whitelist (parcel_id, player_id, shard_key) VALUES (?, ?, ?)";
+	private static final String INSERT_NATION = "INSERT INTO cml_nation (parcel_id, nation_id, border_type, shard_key) VALUES (?, ?, ?, ?)";
+	private static final String INSERT_SHARD = "INSERT INTO cml_shard (shard_key, checksum) VALUES (?, ?)";
+	private static final String[] DELETE_SHARD = {
+			"DELETE FROM cml_parcel WHERE shard_key = ?",
+			"DELETE FROM cml_parcel_whitelist WHERE shard_key = ?",
+			"DELETE FROM cml_nation WHERE shard_key = ?",
+			"DELETE FROM cml_shard WHERE shard_key = ?"
+	};
+
+	private static final String SQLITE_PREFIX = "jdbc:sqlite:";
+
+	private final String url;
+	private Connection connection;
+	// crc32 of each shard as last written
+	private final Long2IntMap checksums = new Long2IntOpenHashMap();
+
+	/**
+	 *
+	 * @param url the jdbc url
+	 * @throws SQLException if the database can't be opened ie. the driver is not available
+	 */
+	public JdbcParcelStore(String url) throws SQLException {
+		this.url = url;
+		this.connection = getConnection(url);
+		try (Statement statement = connection.createStatement()) {
+			for (String sql : SCHEMA) {
+				statement.execute(sql);
+			}
+		}
+	}
+
+	/**
+	 * the bundled SQLite driver is connected to directly, as it isn't visible to the DriverManager
+	 * from the mod's module layer.
+	 */
+	private static Connection getConnection(String url) throws SQLException {
+		if (url.startsWith(SQLITE_PREFIX)) {
+			return new org.sqlite.JDBC().connect(url, new Properties());
+		}
+		return DriverManager.getConnection(url);
+	}
+
+	@Override
+	public synchronized List<Parcel> load() {
+		List<Parcel> parcels = new ArrayList<>();
+		checksums.clear();
+		try (Statement statement = connection.createStatement()) {
+			try (ResultSet result = statement.executeQuery("SELECT data FROM cml_parcel")) {
+				while (result.next()) {
+					parcels.add(decode(result.getBytes(1)));
+				}
+			}
+			try (ResultSet result = statement.executeQuery("SELECT shard_key, checksum FROM cml_shard")) {
+				while (result.next()) {
+					checksums.put(result.getLong(1), result.getInt(2));
+				}
+			}
+		} catch (SQLException | IOException e) {
+			ClaimMyLand.LOGGER.error("unable to load parcels from -> {}", url, e);
+		}
+		return parcels;
+	}
+
+	@Override
+	public synchronized List<Parcel> loadShard(long key) throws IOException {
+		if (connection == null) {
+			throw new IOException("parcel database is closed -> " + url);
+		}
+		List<Parcel> parcels = new ArrayList<>();
+		try (PreparedStatement statement = connection.prepareStatement("SELECT data FROM cml_parcel WHERE shard_key = ?")) {
+			statement.setLong(1, key);
+			try (ResultSet result = statement.executeQuery()) {
+				while (result.next()) {
+					parcels.add(decode(result.getBytes(1)));
+				}
+			}
+		} catch (SQLException e) {
+			throw new IOException("unable to load parcel shard -> " + key, e);
+		}
+		return parcels;
+	}
+
+	@Override
+	public synchronized List<Parcel> find(Box box) throws IOException {
+		if (connection == null) {
+			throw new IOException("parcel database is closed -> " + url);
+		}
+		List<Parcel> parcels = new ArrayList<>();
+		String sql = "SELECT data FROM cml_parcel WHERE min_x <= ? AND max_x >= ? AND min_z <= ? AND max_z >= ?"
+				+ " AND min_y <= ? AND max_y >= ?";
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			statement.setInt(1, box.getMaxCoords().getX());
+			statement.setInt(2, box.getMinCoords().getX());
+			statement.setInt(3, box.getMaxCoords().getZ());
+			statement.setInt(4, box.getMinCoords().getZ());
+			statement.setInt(5, box.getMaxCoords().getY());
+			statement.setInt(6, box.getMinCoords().getY());
+			try (ResultSet result = statement.executeQuery()) {
+				while (result.next()) {
+					parcels.add(decode(result.getBytes(1)));
+				}
+			}
+		} catch (SQLException e) {
+			throw new IOException("unable to query parcels -> " + box, e);
+		}
+		return parcels;
+	}
+
+	@Override
+	public synchronized boolean save(Long2ObjectMap<byte[]> shards) {
+		if (shards.isEmpty()) {
+			return true;
+		}
+		Long2IntMap written = new Long2IntOpenHashMap();
+		try {
+			connection.setAutoCommit(false);
+			try (PreparedStatement deleteParcels = connection.prepareStatement(DELETE_SHARD[0]);
+				 PreparedStatement deleteWhitelists = connection.prepareStatement(DELETE_SHARD[1]);
+				 PreparedStatement deleteNations = connection.prepareStatement(DELETE_SHARD[2]);
+				 PreparedStatement deleteShards = connection.prepareStatement(DELETE_SHARD[3]);
+				 PreparedStatement insertParcel = connection.prepareStatement(INSERT_PARCEL);
+				 PreparedStatement insertWhitelist = connection.prepareStatement(INSERT_WHITELIST);
+				 PreparedStatement insertNation = connection.prepareStatement(INSERT_NATION);
+				 PreparedStatement insertShard = connection.prepareStatement(INSERT_SHARD)) {
+
+				for (Long2ObjectMap.Entry<byte[]> shard : shards.long2ObjectEntrySet()) {
+					long key = shard.getLongKey();
+					for (PreparedStatement delete : new PreparedStatement[] {deleteParcels, deleteWhitelists, deleteNations, deleteShards}) {
+						delete.setLong(1, key);
+						delete.addBatch();
+					}
+					if (shard.getValue() == null) {
+						continue;
+					}
+					for (Parcel parcel : ParcelCodec.decode(new DataInputStream(new ByteArrayInputStream(shard.getValue())))) {
+						addParcel(insertParcel, insertWhitelist, insertNation, key, parcel);
+					}
+					CRC32 crc = new CRC32();
+					crc.update(shard.getValue());
+					insertShard.setLong(1, key);
+					insertShard.setInt(2, (int) crc.getValue());
+					insertShard.addBatch();
+					written.put(key, (int) crc.getValue());
+				}
+
+				// the deletes must precede the inserts
+				for (PreparedStatement statement : new PreparedStatement[] {deleteParcels, deleteWhitelists, deleteNations, deleteShards,
+						insertParcel, insertWhitelist, insertNation, insertShard}) {
+					statement.executeBatch();
+				}
+			}
+			connection.commit();
+		} catch (SQLException | IOException e) {
+			ClaimMyLand.LOGGER.error("unable to save parcels to -> {}", url, e);
+			try {
+				connection.rollback();
+			} catch (SQLException ex) {
+				ClaimMyLand.LOGGER.error("unable to rollback parcels save:", ex);
+			}
+			return false;
+		} finally {
+			try {
+				connection.setAutoCommit(true);
+			} catch (SQLException e) {
+				ClaimMyLand.LOGGER.error("unable to reset auto commit:", e);
+			}
+		}
+
+		for (long key : shards.keySet().toLongArray()) {
+			checksums.remove(key);
+		}
+		checksums.putAll(written);
+		return true;
+	}
+
+	private static void addParcel(PreparedStatement insertParcel, PreparedStatement insertWhitelist, PreparedStatement insertNation,
+			long key, Parcel parcel) throws SQLException, IOException {
+		String id = parcel.getId().toString();
+		Box box = parcel.getBox();
+		insertParcel.setString(1, id);
+		insertParcel.setLong(2, key);
+		insertParcel.setString(3, parcel.getType().getSerializedName());
+		insertParcel.setString(4, parcel.getName());
+		insertParcel.setString(5, toString(parcel.getOwnerId()));
+		insertParcel.setString(6, toString(parcel.getNationId()));
+		insertParcel.setString(7, toString(parcel.getDeedId()));
+		insertParcel.setInt(8, box.getMinCoords().getX());
+		insertParcel.setInt(9, box.getMinCoords().getY());
+		insertParcel.setInt(10, box.getMinCoords().getZ());
+		insertParcel.setInt(11, box.getMaxCoords().getX());
+		insertParcel.setInt(12, box.getMaxCoords().getY());
+		insertParcel.setInt(13, box.getMaxCoords().getZ());
+		insertParcel.setLong(14, parcel.getFoundedTime());
+		insertParcel.setLong(15, parcel.getOnwerTime());
+		insertParcel.setLong(16, parcel.getAbandonedTime());
+		insertParcel.setBytes(17, encode(parcel));
+		insertParcel.addBatch();
+
+		for (UUID player : parcel.getWhitelist()) {
+			insertWhitelist.setString(1, id);
+			insertWhitelist.setString(2, player.toString());
+			insertWhitelist.setLong(3, key);
+			insertWhitelist.addBatch();
+		}
+
+		if (parcel instanceof NationParcel nation) {
+			insertNation.setString(1, id);
+			insertNation.setString(2, toString(nation.getNationId()));
+			insertNation.setString(3, nation.getBorderType().getSerializedName());
+			insertNation.setLong(4, key);
+			insertNation.addBatch();
+		}
+	}
+
+	/**
+	 * [byte codec version][parcel]
+	 */
+	private static byte[] encode(Parcel parcel) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		try (DataOutputStream output = new DataOutputStream(bytes)) {
+			output.writeByte(ParcelCodec.VERSION);
+			ParcelCodec.write(parcel, output);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Parcel decode(byte[] data) throws IOException {
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+		return ParcelCodec.read(input, input.readByte());
+	}
+
+	private static String toString(UUID uuid) {
+		return uuid == null ? null : uuid.toString();
+	}
+
+	@Override
+	public synchronized long getStamp() {
+		return ParcelStore.getStamp(checksums);
+	}
+
+	@Override
+	public synchronized void close() {
+		if (connection != null) {
+			try {
+				connection.close();
+			} catch (SQLException e) {
+				ClaimMyLand.LOGGER.error("unable to close parcel database -> {}", url, e);
+			}
+			connection = null;
+		}
+	}
+}
@@ -0,0 +1,344 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.persistence;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import mod.gottsch.forge.claimmyland.ClaimMyLand;
+import mod.gottsch.forge.claimmyland.core.parcel.*;
+import mod.gottsch.forge.claimmyland.core.registry.ParcelRegistry;
+import mod.gottsch.forge.gottschcore.spatial.Box;
+import mod.gottsch.forge.gottschcore.spatial.Coords;
+import mod.gottsch.forge.gottschcore.spatial.ICoords;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.level.storage.LevelResource;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * backup and restore of the parcels as gzip compressed JSON Lines, one parcel per line,
+ * preceded by a header line. stored in data/claimmyland/backups of the world save.
+ * both run on the save thread: the export streams the parcels shard by shard from the store, once
+ * the changed shards are written, and the import streams the file and then bulk loads the registry
+ * on the server thread.
+ */
+public final class ParcelBackup {
+	private static final String BACKUPS_DIRECTORY = "backups";
+	private static final String EXTENSION = ".jsonl.gz";
+	private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+	private static final String FORMAT = "claimmyland-parcels";
+	private static final int VERSION = 1;
+
+	private ParcelBackup() {}
+
+	/**
+	 * backs up all the parcels to a new timestamped file.
+	 * the changed shards are saved first, then the shards of the registry at that point are read back from
+	 * the store, one at a time. the save thread runs its writes in order, so no later write is interleaved.
+	 * @param server
+	 * @return the backup file name, and the number of parcels exported on completion
+	 */
+	public static Backup backup(MinecraftServer server) {
+		String name = "parcels-" + LocalDateTime.now().format(TIMESTAMP) + EXTENSION;
+		Path file = getDirectory(server).resolve(name);
+		PersistedData data = PersistedData.get(server.overworld());
+		CompletableFuture<Boolean> saved = data.saveParcels();
+		long[] keys = ParcelRegistry.getShardKeys();
+		ParcelStore store = data.getParcelStore();
+
+		CompletableFuture<Integer> future = new CompletableFuture<>();
+		ParcelSaveExecutor.submit(() -> {
+			try {
+				// the save is queued ahead of the export, so it has completed
+				if (!saved.getNow(false)) {
+					throw new IOException("unable to save the changed parcel shards");
+				}
+				future.complete(export(store, keys, file));
+			} catch (Exception e) {
+				ClaimMyLand.LOGGER.error("unable to back up parcels to -> {}", file, e);
+				future.completeExceptionally(e);
+			}
+		});
+		return new Backup(name, future);
+	}
+
+	private static int export(ParcelStore store, long[] keys, Path file) throws IOException {
+		Files.createDirectories(file.getParent());
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		int count;
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+				new GZIPOutputStream(Files.newOutputStream(temp), 8192), StandardCharsets.UTF_8))) {
+			JsonWriter header = new JsonWriter(writer);
+			header.beginObject().name("format").value(FORMAT).name("version").value(VERSION).endObject();
+			header.flush();
+			writer.write('\n');
+
+			count = 0;
+			for (long key : keys) {
+				for (Parcel parcel : store.loadShard(key)) {
+					// a writer per line, as JSON Lines are multiple top-level values
+					JsonWriter json = new JsonWriter(writer);
+					write(json, parcel);
+					json.flush();
+					writer.write('\n');
+					count++;
+				}
+			}
+		}
+		Files.move(temp, file);
+		ClaimMyLand.LOGGER.info("backed up {} parcels to -> {}", count, file);
+		return count;
+	}
+
+	/**
+	 * restores the parcels of a backup, replacing all the current parcels.
+	 * the file is read on the save thread, then the registry is loaded and saved on the server thread.
+	 * @param server
+	 * @param name the backup file name
+	 * @return the number of parcels restored on completion
+	 */
+	public static CompletableFuture<Integer> restore(MinecraftServer server, String name) {
+		CompletableFuture<Integer> future = new CompletableFuture<>();
+		Optional<Path> file = getBackup(server, name);
+		if (file.isEmpty()) {
+			future.completeExceptionally(new FileNotFoundException(name));
+			return future;
+		}
+
+		ParcelSaveExecutor.submit(() -> {
+			List<Parcel> parcels;
+			try {
+				parcels = load(file.get());
+			} catch (Exception e) {
+				ClaimMyLand.LOGGER.error("unable to restore parcels from -> {}", file.get(), e);
+				future.completeExceptionally(e);
+				return;
+			}
+			server.execute(() -> {
+				ParcelRegistry.restore(parcels);
+				PersistedData data = PersistedData.get(server.overworld());
+				// persist the restored parcels now rather than at the next world save
+				data.saveParcels();
+				data.setDirty();
+				ClaimMyLand.LOGGER.info("restored {} parcels from -> {}", parcels.size(), file.get());
+				future.complete(parcels.size());
+			});
+		});
+		return future;
+	}
+
+	private static List<Parcel> load(Path file) throws IOException {
+		List<Parcel> parcels = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(Files.newInputStream(file), 8192), StandardCharsets.UTF_8))) {
+			String line = reader.readLine();
+			if (line == null) {
+				throw new IOException("empty parcel backup");
+			}
+			JsonObject header = JsonParser.parseString(line).getAsJsonObject();
+			if (!header.has("format") || !FORMAT.equals(header.get("format").getAsString())) {
+				throw new IOException("not a parcel backup");
+			}
+			if (header.get("version").getAsInt() > VERSION) {
+				throw new IOException("unsupported parcel backup version -> " + header.get("version").getAsInt());
+			}
+			while ((line = reader.readLine()) != null) {
+				if (!line.isBlank()) {
+					parcels.add(read(JsonParser.parseString(line).getAsJsonObject()));
+				}
+			}
+		} catch (RuntimeException e) {
+			// malformed json
+			throw new IOException(e);
+		}
+		return parcels;
+	}
+
+	private static void write(JsonWriter json, Parcel parcel) throws IOException {
+		json.beginObject();
+		json.name("id").value(parcel.getId().toString());
+		json.name("type").value(parcel.getType().getSerializedName());
+		writeUUID(json, "nationId", parcel.getNationId());
+		writeUUID(json, "ownerId", parcel.getOwnerId());
+		writeUUID(json, "deedId", parcel.getDeedId());
+		if (parcel.getName() != null) {
+			json.name("name").value(parcel.getName());
+		}
+		json.name("coords");
+		writeCoords(json, parcel.getCoords());
+		json.name("min");
+		writeCoords(json, parcel.getSize().getMinCoords());
+		json.name("max");
+		writeCoords(json, parcel.getSize().getMaxCoords());
+		if (!parcel.getWhitelist().isEmpty()) {
+			json.name("whitelist");
+			writeUUIDs(json, parcel.getWhitelist());
+		}
+		json.name("foundedTime").value(parcel.getFoundedTime());
+		json.name("ownerTime").value(parcel.getOnwerTime());
+		json.name("abandonedTime").value(parcel.getAbandonedTime());
+		if (parcel instanceof NationParcel nation) {
+			json.name("borderType").value(nation.getBorderType().getSerializedName());
+			if (!nation.getBlacklist().isEmpty()) {
+				json.name("blacklist");
+				writeUUIDs(json, nation.getBlacklist());
+			}
+		}
+		json.endObject();
+	}
+
+	private static Parcel read(JsonObject json) throws IOException {
+		ParcelType type = ParcelType.valueOf(json.get("type").getAsString());
+		Parcel parcel = ParcelFactory.createEmpty(type)
+				.orElseThrow(() -> new IOException("unsupported parcel type -> " + type));
+		parcel.setType(type);
+		parcel.setId(UUID.fromString(json.get("id").getAsString()));
+		parcel.setNationId(readUUID(json, "nationId"));
+		parcel.setOwnerId(readUUID(json, "ownerId"));
+		parcel.setDeedId(readUUID(json, "deedId"));
+		if (json.has("name")) {
+			parcel.setName(json.get("name").getAsString());
+		}
+		parcel.setCoords(readCoords(json.getAsJsonArray("coords")));
+		parcel.setSize(new Box(readCoords(json.getAsJsonArray("min")), readCoords(json.getAsJsonArray("max"))));
+		if (json.has("whitelist")) {
+			json.getAsJsonArray("whitelist").forEach(e -> parcel.getWhitelist().add(UUID.fromString(e.getAsString())));
+		}
+		parcel.setFoundedTime(json.get("foundedTime").getAsLong());
+		parcel.setOwnerTime(json.get("ownerTime").getAsLong());
+		parcel.setAbandonedTime(json.get("abandonedTime").getAsLong());
+		if (parcel instanceof NationParcel nation) {
+			if (json.has("borderType")) {
+				nation.setBorderType(NationBorderType.valueOf(json.get("borderType").getAsString()));
+			}
+			if (json.has("blacklist")) {
+				json.getAsJsonArray("blacklist").forEach(e -> nation.getBlacklist().add(UUID.fromString(e.getAsString())));
+			}
+		}
+		return parcel;
+	}
+
+	private static void writeUUID(JsonWriter json, String name, UUID uuid) throws IOException {
+		if (uuid != null) {
+			json.name(name).value(uuid.toString());
+		}
+	}
+
+	private static UUID readUUID(JsonObject json, String name) {
+		JsonElement element = json.get(name);
+		return element == null || element.isJsonNull() ? null : UUID.fromString(element.getAsString());
+	}
+
+	private static void writeUUIDs(JsonWriter json, List<UUID> uuids) throws IOException {
+		json.beginArray();
+		for (UUID uuid : uuids) {
+			json.value(uuid.toString());
+		}
+		json.endArray();
+	}
+
+	private static void writeCoords(JsonWriter json, ICoords coords) throws IOException {
+		json.beginArray().value(coords.getX()).value(coords.getY()).value(coords.getZ()).endArray();
+	}
+
+	private static ICoords readCoords(JsonArray array) {
+		return Coords.of(array.get(0).getAsInt(), array.get(1).getAsInt(), array.get(2).getAsInt());
+	}
+
+	/**
+	 * the backup file names, newest first
+	 * @param server
+	 * @return
+	 */
+	public static List<String> list(MinecraftServer server) {
+		Path directory = getDirectory(server);
+		if (!Files.isDirectory(directory)) {
+			return List.of();
+		}
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.map(file -> file.getFileName().toString())
+					.filter(name -> name.endsWith(EXTENSION))
+					.sorted(Comparator.reverseOrder())
+					.toList();
+		} catch (IOException e) {
+			ClaimMyLand.LOGGER.error("unable to list parcel backups in -> {}", directory, e);
+			return List.of();
+		}
+	}
+
+	/**
+	 * resolves a backup by name, only within the backups directory
+	 * @param server
+	 * @param name
+	 * @return
+	 */
+	private static Optional<Path> getBackup(MinecraftServer server, String name) {
+		Path directory = getDirectory(server);
+		Path file = directory.resolve(name).normalize();
+		if (!name.endsWith(EXTENSION) || !file.getParent().equals(directory) || !Files.isRegularFile(file)) {
+			return Optional.empty();
+		}
+		return Optional.of(file);
+	}
+
+	private static Path getDirectory(MinecraftServer server) {
+		return server.getWorldPath(LevelResource.ROOT).resolve("data").resolve(ClaimMyLand.MOD_ID)
+				.resolve(BACKUPS_DIRECTORY).normalize();
+	}
+
+	/**
+	 * a started backup
+	 */
+	public static final class Backup {
+		private final String name;
+		private final CompletableFuture<Integer> future;
+
+		private Backup(String name, CompletableFuture<Integer> future) {
+			this.name = name;
+			this.future = future;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public CompletableFuture<Integer> getFuture() {
+			return future;
+		}
+	}
+}
@@ -0,0 +1,307 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.persistence;
+
+import mod.gottsch.forge.claimmyland.core.parcel.*;
+import mod.gottsch.forge.gottschcore.spatial.Box;
+import mod.gottsch.forge.gottschcore.spatial.Coords;
+import mod.gottsch.forge.gottschcore.spatial.ICoords;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * compact binary encoding of parcels, used for the on-disk form of the registry.
+ * replaces the per-parcel CompoundTag trees (string keys, nested coords/size compounds,
+ * string uuids) with fixed-width ints for coords, raw longs for uuids, a type byte
+ * and varint-length lists.
+ * shard layout: [int magic][byte version][varint count][parcel]*
+ */
+public final class ParcelCodec {
+	public static final int MAGIC = 0x434D4C50; // CMLP
+	public static final byte VERSION = 1;
+
+	// optional field flags
+	private static final int HAS_NATION_ID = 1;
+	private static final int HAS_OWNER_ID = 1 << 1;
+	private static final int HAS_DEED_ID = 1 << 2;
+	private static final int HAS_NAME = 1 << 3;
+	private static final int HAS_WHITELIST = 1 << 4;
+
+	private static final ParcelType[] TYPES = ParcelType.values();
+	private static final NationBorderType[] BORDER_TYPES = NationBorderType.values();
+
+	private ParcelCodec() {}
+
+	/**
+	 * an immutable copy of the persisted state of a parcel. it is taken on the server thread,
+	 * so that the parcel can be encoded on another thread while the live parcel is still being changed.
+	 * only the lists are copied, all the other values are immutable.
+	 */
+	public record Snapshot(ParcelType type, UUID id, UUID nationId, UUID ownerId, UUID deedId, String name,
+			int x, int y, int z, int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+			List<UUID> whitelist, long foundedTime, long ownerTime, long abandonedTime,
+			NationBorderType borderType, List<UUID> blacklist) {
+
+		public static Snapshot of(Parcel parcel) {
+			ICoords coords = parcel.getCoords();
+			ICoords min = parcel.getSize().getMinCoords();
+			ICoords max = parcel.getSize().getMaxCoords();
+			List<UUID> whitelist = parcel.getWhitelist() == null ? List.of() : List.copyOf(parcel.getWhitelist());
+			NationBorderType borderType = NationBorderType.CLOSED;
+			List<UUID> blacklist = List.of();
+			if (parcel instanceof NationParcel nation) {
+				borderType = nation.getBorderType();
+				blacklist = List.copyOf(nation.getBlacklist());
+			}
+			return new Snapshot(parcel.getType(), parcel.getId(), parcel.getNationId(), parcel.getOwnerId(), parcel.getDeedId(),
+					parcel.getName(), coords.getX(), coords.getY(), coords.getZ(),
+					min.getX(), min.getY(), min.getZ(), max.getX(), max.getY(), max.getZ(),
+					whitelist, parcel.getFoundedTime(), parcel.getOnwerTime(), parcel.getAbandonedTime(),
+					borderType, blacklist);
+		}
+	}
+
+	/**
+	 * encodes the parcels as a shard
+	 * @param parcels
+	 * @return
+	 */
+	public static byte[] encode(Collection<Parcel> parcels) {
+		return encodeSnapshots(parcels.stream().map(Snapshot::of).toList());
+	}
+
+	/**
+	 * encodes the parcel snapshots as a shard
+	 * @param parcels
+	 * @return
+	 */
+	public static byte[] encodeSnapshots(Collection<Snapshot> parcels) {
+		// ~100 bytes per parcel without a whitelist
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + parcels.size() * 112);
+		try (DataOutputStream output = new DataOutputStream(bytes)) {
+			output.writeInt(MAGIC);
+			output.writeByte(VERSION);
+			writeVarInt(output, parcels.size());
+			for (Snapshot parcel : parcels) {
+				write(parcel, output);
+			}
+		} catch (IOException e) {
+			// not thrown by a byte array stream
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * decodes a shard
+	 * @param input
+	 * @return
+	 * @throws IOException if the data is not a shard, or is of an unsupported version
+	 */
+	public static List<Parcel> decode(DataInput input) throws IOException {
+		List<Parcel> parcels = new ArrayList<>();
+		decode(input, parcels::add);
+		return parcels;
+	}
+
+	/**
+	 * decodes a shard one parcel at a time ie. without holding all the parcels
+	 * @param input
+	 * @param consumer
+	 * @return the number of parcels
+	 * @throws IOException if the data is not a shard, or is of an unsupported version
+	 */
+	public static int decode(DataInput input, ParcelConsumer consumer) throws IOException {
+		if (input.readInt() != MAGIC) {
+			throw new IOException("not a parcel shard");
+		}
+		byte version = input.readByte();
+		if (version < 1 || version > VERSION) {
+			throw new IOException("unsupported parcel shard version -> " + version);
+		}
+		int count = readVarInt(input);
+		for (int i = 0; i < count; i++) {
+			consumer.accept(read(input, version));
+		}
+		return count;
+	}
+
+	public interface ParcelConsumer {
+		void accept(Parcel parcel) throws IOException;
+	}
+
+	/**
+	 *
+	 * @param parcel
+	 * @param output
+	 * @throws IOException
+	 */
+	public static void write(Parcel parcel, DataOutput output) throws IOException {
+		write(Snapshot.of(parcel), output);
+	}
+
+	/**
+	 *
+	 * @param parcel
+	 * @param output
+	 * @throws IOException
+	 */
+	public static void write(Snapshot parcel, DataOutput output) throws IOException {
+		output.writeByte(parcel.type().ordinal());
+
+		int flags = 0;
+		if (parcel.nationId() != null) flags |= HAS_NATION_ID;
+		if (parcel.ownerId() != null) flags |= HAS_OWNER_ID;
+		if (parcel.deedId() != null) flags |= HAS_DEED_ID;
+		if (parcel.name() != null && !parcel.name().isBlank()) flags |= HAS_NAME;
+		if (!parcel.whitelist().isEmpty()) flags |= HAS_WHITELIST;
+		output.writeByte(flags);
+
+		writeUUID(output, parcel.id());
+		if ((flags & HAS_NATION_ID) != 0) writeUUID(output, parcel.nationId());
+		if ((flags & HAS_OWNER_ID) != 0) writeUUID(output, parcel.ownerId());
+		if ((flags & HAS_DEED_ID) != 0) writeUUID(output, parcel.deedId());
+		if ((flags & HAS_NAME) != 0) output.writeUTF(parcel.name());
+
+		writeCoords(output, parcel.x(), parcel.y(), parcel.z());
+		writeCoords(output, parcel.minX(), parcel.minY(), parcel.minZ());
+		writeCoords(output, parcel.maxX(), parcel.maxY(), parcel.maxZ());
+
+		if ((flags & HAS_WHITELIST) != 0) {
+			writeUUIDs(output, parcel.whitelist());
+		}
+
+		output.writeLong(parcel.foundedTime());
+		output.writeLong(parcel.ownerTime());
+		output.writeLong(parcel.abandonedTime());
+
+		// the nation values are keyed on the type, as it determines the parcel class when read
+		if (parcel.type() == ParcelType.NATION) {
+			output.writeByte(parcel.borderType().ordinal());
+			writeUUIDs(output, parcel.blacklist());
+		}
+	}
+
+	/**
+	 *
+	 * @param input
+	 * @param version the version of the data
+	 * @return
+	 * @throws IOException
+	 */
+	public static Parcel read(DataInput input, byte version) throws IOException {
+		int ordinal = input.readUnsignedByte();
+		if (ordinal >= TYPES.length) {
+			throw new IOException("unknown parcel type -> " + ordinal);
+		}
+		Parcel parcel = ParcelFactory.createEmpty(TYPES[ordinal])
+				.orElseThrow(() -> new IOException("unsupported parcel type -> " + TYPES[ordinal]));
+		parcel.setType(TYPES[ordinal]);
+
+		int flags = input.readUnsignedByte();
+		parcel.setId(readUUID(input));
+		if ((flags & HAS_NATION_ID) != 0) parcel.setNationId(readUUID(input));
+		if ((flags & HAS_OWNER_ID) != 0) parcel.setOwnerId(readUUID(input));
+		if ((flags & HAS_DEED_ID) != 0) parcel.setDeedId(readUUID(input));
+		if ((flags & HAS_NAME) != 0) parcel.setName(input.readUTF());
+
+		parcel.setCoords(readCoords(input));
+		ICoords min = readCoords(input);
+		parcel.setSize(new Box(min, readCoords(input)));
+
+		if ((flags & HAS_WHITELIST) != 0) {
+			readUUIDs(input, parcel.getWhitelist());
+		}
+
+		parcel.setFoundedTime(input.readLong());
+		parcel.setOwnerTime(input.readLong());
+		parcel.setAbandonedTime(input.readLong());
+
+		if (parcel instanceof NationParcel nation) {
+			int borderType = input.readUnsignedByte();
+			nation.setBorderType(borderType < BORDER_TYPES.length ? BORDER_TYPES[borderType] : NationBorderType.CLOSED);
+			readUUIDs(input, nation.getBlacklist());
+		}
+		return parcel;
+	}
+
+	private static void writeCoords(DataOutput output, int x, int y, int z) throws IOException {
+		output.writeInt(x);
+		output.writeInt(y);
+		output.writeInt(z);
+	}
+
+	private static ICoords readCoords(DataInput input) throws IOException {
+		return Coords.of(input.readInt(), input.readInt(), input.readInt());
+	}
+
+	public static void writeUUID(DataOutput output, UUID uuid) throws IOException {
+		output.writeLong(uuid.getMostSignificantBits());
+		output.writeLong(uuid.getLeastSignificantBits());
+	}
+
+	public static UUID readUUID(DataInput input) throws IOException {
+		return new UUID(input.readLong(), input.readLong());
+	}
+
+	private static void writeUUIDs(DataOutput output, List<UUID> uuids) throws IOException {
+		writeVarInt(output, uuids.size());
+		for (UUID uuid : uuids) {
+			writeUUID(output, uuid);
+		}
+	}
+
+	private static void readUUIDs(DataInput input, List<UUID> uuids) throws IOException {
+		int size = readVarInt(input);
+		for (int i = 0; i < size; i++) {
+			uuids.add(readUUID(input));
+		}
+	}
+
+	/**
+	 * unsigned LEB128 ie. 1 byte for values < 128
+	 * @param output
+	 * @param value
+	 * @throws IOException
+	 */
+	public static void writeVarInt(DataOutput output, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			output.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		output.writeByte(value);
+	}
+
+	public static int readVarInt(DataInput input) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = input.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("varint is too long");
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.persistence;
+
+import mod.gottsch.forge.claimmyland.ClaimMyLand;
+import mod.gottsch.forge.claimmyland.core.config.ConfigSnapshot;
+import mod.gottsch.forge.claimmyland.core.registry.ParcelIndexEntry;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * file storage of the built spatial indexes, saved next to the parcel shards.
+ * the trees are balanced trees built from their entries in sorted order, so the flattened layout
+ * of a tree is its sorted entries. the buffer entries hold the already inflated buffer boxes.
+ * the index is only valid for the shards (stamp) and buffer radii (config hash) it was saved with.
+ * layout: [int magic][byte version][int config hash][long stamp][tree][buffer tree][int crc32]
+ * tree: [int count][entry]* where entry: [long most][long least][int minX..maxZ]
+ */
+public class ParcelIndexStorage {
+	private static final int MAGIC = 0x434D4C49; // CMLI
+	private static final byte VERSION = 1;
+	private static final String INDEX_FILE = "index.bin";
+
+	private static final int HEADER_SIZE = 4 + 1 + 4 + 8;
+	// uuid + 6 ints
+	private static final int ENTRY_SIZE = 16 + 24;
+
+	private final Path file;
+
+	/**
+	 * the persisted entries of a tree, in tree order
+	 */
+	public static final class Section {
+		// most, least significant bits per entry
+		private final long[] ids;
+		// minX, minY, minZ, maxX, maxY, maxZ per entry
+		private final int[] bounds;
+
+		private Section(int size) {
+			ids = new long[size * 2];
+			bounds = new int[size * 6];
+		}
+
+		public int size() {
+			return ids.length / 2;
+		}
+
+		public long getMostSignificantBits(int index) {
+			return ids[index * 2];
+		}
+
+		public long getLeastSignificantBits(int index) {
+			return ids[index * 2 + 1];
+		}
+
+		/**
+		 *
+		 * @param index the entry index
+		 * @param bound 0-5 ie. minX, minY, minZ, maxX, maxY, maxZ
+		 * @return
+		 */
+		public int getBound(int index, int bound) {
+			return bounds[index * 6 + bound];
+		}
+	}
+
+	/**
+	 * the persisted tree and buffer tree
+	 */
+	public static final class Index {
+		private final Section tree;
+		private final Section buffer;
+
+		private Index(Section tree, Section buffer) {
+			this.tree = tree;
+			this.buffer = buffer;
+		}
+
+		public Section getTree() {
+			return tree;
+		}
+
+		public Section getBuffer() {
+			return buffer;
+		}
+	}
+
+	/**
+	 *
+	 * @param directory
+	 */
+	public ParcelIndexStorage(Path directory) {
+		this.file = directory.resolve(INDEX_FILE);
+	}
+
+	/**
+	 * the hash of the config values that the index depends on ie. the buffer radii
+	 * @param snapshot
+	 * @return
+	 */
+	public static int getConfigHash(ConfigSnapshot snapshot) {
+		return 31 * snapshot.parcelBufferRadius + snapshot.nationParcelBufferRadius;
+	}
+
+	/**
+	 * encodes the entries of the trees, in tree order. the entries are immutable, so this can be done off the server thread.
+	 * @param tree
+	 * @param buffer
+	 * @return
+	 */
+	public static byte[] encode(List<ParcelIndexEntry> tree, List<ParcelIndexEntry> buffer) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + (tree.size() + buffer.size()) * ENTRY_SIZE);
+		try (DataOutputStream output = new DataOutputStream(bytes)) {
+			write(output, tree);
+			write(output, buffer);
+		} catch (IOException e) {
+			// not thrown by a byte array stream
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void write(DataOutputStream output, List<ParcelIndexEntry> entries) throws IOException {
+		output.writeInt(entries.size());
+		for (ParcelIndexEntry entry : entries) {
+			ParcelCodec.writeUUID(output, entry.getParcel().getId());
+			output.writeInt(entry.getMinX());
+			output.writeInt(entry.getMinY());
+			output.writeInt(entry.getMinZ());
+			output.writeInt(entry.getMaxX());
+			output.writeInt(entry.getMaxY());
+			output.writeInt(entry.getMaxZ());
+		}
+	}
+
+	/**
+	 * writes the encoded entries with the header and checksum.
+	 * @param entries the encoded entries
+	 * @param stamp the stamp of the shards the entries were built from
+	 * @param configHash
+	 */
+	public void save(byte[] entries, long stamp, int configHash) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + entries.length + 4);
+		try (DataOutputStream output = new DataOutputStream(bytes)) {
+			output.writeInt(MAGIC);
+			output.writeByte(VERSION);
+			output.writeInt(configHash);
+			output.writeLong(stamp);
+			output.write(entries);
+			output.writeInt(checksum(bytes.toByteArray(), bytes.size()));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		try {
+			Files.createDirectories(file.getParent());
+			Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+			Files.write(temp, bytes.toByteArray());
+			try {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			ClaimMyLand.LOGGER.error("unable to write parcel index -> {}", file, e);
+			delete();
+		}
+	}
+
+	/**
+	 * reads the index if it is still valid for the shards and config.
+	 * @param stamp the stamp of the loaded shards
+	 * @param configHash
+	 * @return empty if there is no index, or it is stale or corrupt
+	 */
+	public Optional<Index> load(long stamp, int configHash) {
+		if (!Files.exists(file)) {
+			return Optional.empty();
+		}
+		try {
+			byte[] data = Files.readAllBytes(file);
+			if (data.length < HEADER_SIZE + 12) {
+				return Optional.empty();
+			}
+			DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+			if (input.readInt() != MAGIC || input.readByte() != VERSION) {
+				return Optional.empty();
+			}
+			if (input.readInt() != configHash) {
+				ClaimMyLand.LOGGER.debug("parcel index is stale (buffer radii changed)");
+				return Optional.empty();
+			}
+			if (input.readLong() != stamp) {
+				ClaimMyLand.LOGGER.debug("parcel index is stale (parcels changed)");
+				return Optional.empty();
+			}
+			int crc = ((data[data.length - 4] & 0xFF) << 24) | ((data[data.length - 3] & 0xFF) << 16)
+					| ((data[data.length - 2] & 0xFF) << 8) | (data[data.length - 1] & 0xFF);
+			if (crc != checksum(data, data.length - 4)) {
+				ClaimMyLand.LOGGER.warn("parcel index is corrupt -> {}", file);
+				return Optional.empty();
+			}
+			Section tree = read(input);
+			Section buffer = read(input);
+			return Optional.of(new Index(tree, buffer));
+		} catch (IOException e) {
+			ClaimMyLand.LOGGER.warn("unable to read parcel index -> {}", file, e);
+			return Optional.empty();
+		}
+	}
+
+	private static Section read(DataInputStream input) throws IOException {
+		int size = input.readInt();
+		if (size < 0 || (long) size * ENTRY_SIZE > input.available()) {
+			throw new IOException("invalid parcel index size -> " + size);
+		}
+		Section section = new Section(size);
+		for (int i = 0; i < size; i++) {
+			section.ids[i * 2] = input.readLong();
+			section.ids[i * 2 + 1] = input.readLong();
+			for (int b = 0; b < 6; b++) {
+				section.bounds[i * 6 + b] = input.readInt();
+			}
+		}
+		return section;
+	}
+
+	/**
+	 * removes the index ie. when it can no longer be kept in step with the shards.
+	 */
+	public void delete() {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			ClaimMyLand.LOGGER.error("unable to delete parcel index -> {}", file, e);
+		}
+	}
+
+	private static int checksum(byte[] data, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, length);
+		return (int) crc.getValue();
+	}
+}
@@ -0,0 +1,325 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.persistence;
+
+import mod.gottsch.forge.claimmyland.ClaimMyLand;
+import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
+import mod.gottsch.forge.claimmyland.core.parcel.ParcelFactory;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * append-only journal of registry mutations. every change is written as one small record
+ * so that changes made since the last shard save survive a crash. on load, the journal is
+ * replayed on top of the shards.
+ * the journal is split into numbered segments. when the shards are saved, the current segment
+ * is closed and, once the shards are written, all the closed segments are deleted (compaction).
+ * each batch of records (a single change, or a reset) is forced to the device before the call returns,
+ * so it survives an os crash or power loss, not only a crash of the server process.
+ * record layout: [int payload length][int crc32 of payload][payload = op byte + data]
+ */
+public class ParcelJournal implements Closeable {
+	private static final Pattern SEGMENT_NAME = Pattern.compile("journal-(\\d+)\\.log");
+
+	// operations
+	// legacy upsert of a parcel tag, replaced by ENCODED_UPSERT
+	private static final byte UPSERT = 1;
+	private static final byte REMOVE = 2;
+	private static final byte CLEAR = 3;
+	// upsert of a binary encoded parcel: [byte codec version][parcel]
+	private static final byte ENCODED_UPSERT = 4;
+
+	private final Path directory;
+	private final long compactionSize;
+
+	private long segment;
+	private FileChannel channel;
+	private DataOutputStream output;
+	private long size;
+
+	/**
+	 * receives the replayed records
+	 */
+	public interface Handler {
+		void upsert(Parcel parcel);
+		void remove(UUID parcelId);
+		void clear();
+	}
+
+	/**
+	 *
+	 * @param directory
+	 * @param compactionSize the size in bytes of the current segment that requires a compaction
+	 */
+	public ParcelJournal(Path directory, long compactionSize) {
+		this.directory = directory;
+		this.compactionSize = compactionSize;
+	}
+
+	/**
+	 * replays all the existing segments, in order.
+	 * a truncated or corrupt record (ie. a crash mid-write) ends the replay of that segment.
+	 * @param handler
+	 * @return the number of records replayed
+	 */
+	public synchronized int replay(Handler handler) {
+		int count = 0;
+		List<Long> segments = listSegments();
+		// new records are written after the existing segments
+		segment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1;
+		for (long number : segments) {
+			Path file = getSegmentFile(number);
+			try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+				while (true) {
+					int length;
+					try {
+						length = input.readInt();
+					} catch (EOFException e) {
+						break;
+					}
+					int crc = input.readInt();
+					byte[] payload = new byte[length];
+					input.readFully(payload);
+					if (crc != checksum(payload)) {
+						ClaimMyLand.LOGGER.warn("corrupt record in parcel journal -> {}, ignoring remainder of segment", file);
+						break;
+					}
+					apply(payload, handler);
+					count++;
+				}
+			} catch (EOFException e) {
+				ClaimMyLand.LOGGER.warn("truncated record in parcel journal -> {}", file);
+			} catch (IOException e) {
+				ClaimMyLand.LOGGER.error("unable to replay parcel journal -> {}", file, e);
+			}
+		}
+		return count;
+	}
+
+	private void apply(byte[] payload, Handler handler) throws IOException {
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+		byte op = input.readByte();
+		switch (op) {
+			case UPSERT -> {
+				CompoundTag tag = NbtIo.read(input);
+				ParcelFactory.create(tag).ifPresent(parcel -> handler.upsert(parcel.load(tag)));
+			}
+			case ENCODED_UPSERT -> handler.upsert(ParcelCodec.read(input, input.readByte()));
+			case REMOVE -> handler.remove(ParcelCodec.readUUID(input));
+			case CLEAR -> handler.clear();
+			default -> ClaimMyLand.LOGGER.warn("unknown parcel journal operation -> {}", op);
+		}
+	}
+
+	/**
+	 * opens a new segment for writing. must be called after replay().
+	 */
+	public synchronized void open() throws IOException {
+		Files.createDirectories(directory);
+		openSegment();
+	}
+
+	private void openSegment() throws IOException {
+		channel = FileChannel.open(getSegmentFile(segment),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+		size = 0;
+	}
+
+	/**
+	 * writes out the buffered records and forces them to the device.
+	 * only the content, and the length needed to read it back, is forced - not the other file metadata.
+	 */
+	private void sync() throws IOException {
+		output.flush();
+		channel.force(false);
+	}
+
+	public void upsert(Parcel parcel) {
+		append(ENCODED_UPSERT, payload -> {
+			payload.writeByte(ParcelCodec.VERSION);
+			ParcelCodec.write(parcel, payload);
+		});
+	}
+
+	public void remove(UUID parcelId) {
+		append(REMOVE, payload -> ParcelCodec.writeUUID(payload, parcelId));
+	}
+
+	public void clear() {
+		append(CLEAR, payload -> {});
+	}
+
+	/**
+	 * replaces the journaled state with the parcels ie. a clear followed by an upsert of each parcel,
+	 * written as one batch.
+	 * @param parcels
+	 */
+	public synchronized void reset(Collection<Parcel> parcels) {
+		if (output == null) {
+			return;
+		}
+		try {
+			write(CLEAR, payload -> {});
+			for (Parcel parcel : parcels) {
+				write(ENCODED_UPSERT, payload -> {
+					payload.writeByte(ParcelCodec.VERSION);
+					ParcelCodec.write(parcel, payload);
+				});
+			}
+			sync();
+		} catch (IOException e) {
+			ClaimMyLand.LOGGER.error("unable to write to parcel journal:", e);
+		}
+	}
+
+	private interface PayloadWriter {
+		void write(DataOutputStream payload) throws IOException;
+	}
+
+	private synchronized void append(byte op, PayloadWriter writer) {
+		if (output == null) {
+			return;
+		}
+		try {
+			write(op, writer);
+			sync();
+		} catch (IOException e) {
+			ClaimMyLand.LOGGER.error("unable to write to parcel journal:", e);
+		}
+	}
+
+	private void write(byte op, PayloadWriter writer) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream payload = new DataOutputStream(bytes);
+		payload.writeByte(op);
+		writer.write(payload);
+		byte[] data = bytes.toByteArray();
+
+		output.writeInt(data.length);
+		output.writeInt(checksum(data));
+		output.write(data);
+		size += 8 + data.length;
+	}
+
+	/**
+	 * closes the current segment and starts a new one. called when the shards are snapshot,
+	 * so all the closed segments are covered by that snapshot.
+	 * the current segment is kept if nothing has been written to it.
+	 * @return the number of the last closed segment
+	 */
+	public synchronized long rotate() {
+		if (size == 0) {
+			return segment - 1;
+		}
+		long closed = segment;
+		try {
+			if (output != null) {
+				output.close();
+			}
+			segment++;
+			openSegment();
+		} catch (IOException e) {
+			ClaimMyLand.LOGGER.error("unable to rotate parcel journal:", e);
+			output = null;
+		}
+		return closed;
+	}
+
+	/**
+	 * deletes the segments up to and including the given segment, once their changes are persisted.
+	 * @param last
+	 */
+	public void deleteSegments(long last) {
+		for (long number : listSegments()) {
+			if (number <= last) {
+				try {
+					Files.deleteIfExists(getSegmentFile(number));
+				} catch (IOException e) {
+					ClaimMyLand.LOGGER.error("unable to delete parcel journal segment -> {}", number, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * true if the current segment has grown past the compaction size
+	 * @return
+	 */
+	public synchronized boolean isCompactionRequired() {
+		return size >= compactionSize;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (output != null) {
+			try {
+				output.close();
+			} catch (IOException e) {
+				ClaimMyLand.LOGGER.error("unable to close parcel journal:", e);
+			}
+			output = null;
+		}
+	}
+
+	private List<Long> listSegments() {
+		List<Long> segments = new ArrayList<>();
+		if (!Files.isDirectory(directory)) {
+			return segments;
+		}
+		try (Stream<Path> files = Files.list(directory)) {
+			files.forEach(file -> {
+				Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+				if (matcher.matches()) {
+					segments.add(Long.parseLong(matcher.group(1)));
+				}
+			});
+		} catch (IOException e) {
+			ClaimMyLand.LOGGER.error("unable to list parcel journal segments in -> {}", directory, e);
+		}
+		segments.sort(Long::compare);
+		return segments;
+	}
+
+	private Path getSegmentFile(long number) {
+		return directory.resolve("journal-" + number + ".log");
+	}
+
+	private static int checksum(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		return (int) crc.getValue();
+	}
+}
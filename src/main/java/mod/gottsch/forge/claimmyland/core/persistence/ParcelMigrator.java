@@ -0,0 +1,192 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.persistence;
+
+import mod.gottsch.forge.claimmyland.ClaimMyLand;
+import mod.gottsch.forge.claimmyland.core.item.Deed;
+import mod.gottsch.forge.claimmyland.core.parcel.AbstractParcel;
+import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
+import mod.gottsch.forge.claimmyland.core.parcel.ParcelFactory;
+import mod.gottsch.forge.claimmyland.core.parcel.ParcelType;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * upgrades the parcels of old registry formats to the current schema version.
+ * the parcel tags are migrated in a single pass, in parallel batches, by applying each migration
+ * whose version is newer than the version of the data, in order.
+ * a migrated parcel that still can't be created (ie. it has no type or coords) is dropped with a warning,
+ * instead of the parcel classes guessing at the missing values on load.
+ */
+public final class ParcelMigrator {
+	/*
+	 * schema versions of the persisted registry
+	 */
+	// the monolithic registry tag in the saved data
+	public static final int MONOLITHIC = 1;
+	// the registry tags in region shards (.dat)
+	public static final int NBT_SHARDS = 2;
+	// the binary encoded parcels (ParcelCodec) in region shards or the store
+	public static final int BINARY_SHARDS = 3;
+
+	public static final int SCHEMA_VERSION = BINARY_SHARDS;
+
+	private static final int BATCH_SIZE = 1024;
+
+	/**
+	 * a migration of a parcel tag, in place.
+	 */
+	private interface Migration {
+		/**
+		 *
+		 * @param tag
+		 * @return false if the parcel can't be migrated ie. it is dropped
+		 */
+		boolean apply(CompoundTag tag);
+	}
+
+	private record Step(int version, String description, Migration migration) {}
+
+	// in version order
+	private static final List<Step> STEPS = List.of(
+			new Step(BINARY_SHARDS, "normalize parcel tags", ParcelMigrator::normalize)
+	);
+
+	private ParcelMigrator() {}
+
+	/**
+	 * migrates and creates the parcels of a list of parcel tags. the tags are migrated in place.
+	 * a large list is migrated in parallel batches, with the progress written to the log.
+	 * @param tags
+	 * @param version the schema version of the tags
+	 * @return the parcels
+	 */
+	public static List<Parcel> migrate(ListTag tags, int version) {
+		List<Step> steps = STEPS.stream().filter(step -> step.version() > version).toList();
+		int size = tags.size();
+		if (size <= BATCH_SIZE) {
+			return migrate(tags, 0, size, steps);
+		}
+
+		int batches = (size + BATCH_SIZE - 1) / BATCH_SIZE;
+		ClaimMyLand.LOGGER.info("migrating {} parcels from schema version {} to {} in {} batches...", size, version, SCHEMA_VERSION, batches);
+		steps.forEach(step -> ClaimMyLand.LOGGER.info("parcel migration to version {} -> {}", step.version(), step.description()));
+		AtomicInteger completed = new AtomicInteger();
+		// log about every 10%
+		int interval = Math.max(1, batches / 10);
+		List<List<Parcel>> migrated = IntStream.range(0, batches).parallel()
+				.mapToObj(batch -> {
+					List<Parcel> parcels = migrate(tags, batch * BATCH_SIZE, Math.min(size, (batch + 1) * BATCH_SIZE), steps);
+					int count = completed.incrementAndGet();
+					if (count % interval == 0 || count == batches) {
+						ClaimMyLand.LOGGER.info("migrated {}/{} parcel batches", count, batches);
+					}
+					return parcels;
+				})
+				.toList();
+
+		List<Parcel> parcels = new ArrayList<>(size);
+		migrated.forEach(parcels::addAll);
+		if (parcels.size() < size) {
+			ClaimMyLand.LOGGER.warn("dropped {} parcels that could not be migrated", size - parcels.size());
+		}
+		return parcels;
+	}
+
+	private static List<Parcel> migrate(ListTag tags, int from, int to, List<Step> steps) {
+		List<Parcel> parcels = new ArrayList<>(to - from);
+		for (int i = from; i < to; i++) {
+			if (tags.get(i).getId() != Tag.TAG_COMPOUND) {
+				continue;
+			}
+			CompoundTag tag = (CompoundTag) tags.get(i);
+			if (!apply(tag, steps)) {
+				continue;
+			}
+			try {
+				ParcelFactory.create(tag).ifPresent(parcel -> {
+					parcel.load(tag);
+					// the name is required by the name lookups
+					if (parcel.getName() == null || parcel.getName().isBlank()) {
+						parcel.setName(parcel.randomName());
+					}
+					parcels.add(parcel);
+				});
+			} catch (Exception e) {
+				ClaimMyLand.LOGGER.warn("unable to load migrated parcel -> {}", tag, e);
+			}
+		}
+		return parcels;
+	}
+
+	private static boolean apply(CompoundTag tag, List<Step> steps) {
+		for (Step step : steps) {
+			if (!step.migration().apply(tag)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * makes the parcel tag explicit ie. all the values that the binary format requires are present.
+	 * @param tag
+	 * @return
+	 */
+	private static boolean normalize(CompoundTag tag) {
+		// the type is case-sensitive on load
+		ParcelType type = null;
+		if (tag.contains(AbstractParcel.TYPE, Tag.TAG_STRING)) {
+			try {
+				type = ParcelType.valueOf(tag.getString(AbstractParcel.TYPE).toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				// handled below
+			}
+		}
+		if (type == null) {
+			ClaimMyLand.LOGGER.warn("dropping parcel without a valid type -> {}", tag);
+			return false;
+		}
+		tag.putString(AbstractParcel.TYPE, type.getSerializedName());
+
+		if (!tag.contains(AbstractParcel.COORDS_KEY, Tag.TAG_COMPOUND)) {
+			ClaimMyLand.LOGGER.warn("dropping parcel without coords -> {}", tag);
+			return false;
+		}
+		if (!tag.hasUUID(AbstractParcel.ID_KEY)) {
+			tag.putUUID(AbstractParcel.ID_KEY, UUID.randomUUID());
+		}
+		if (!tag.contains(AbstractParcel.SIZE_KEY, Tag.TAG_COMPOUND)) {
+			ClaimMyLand.LOGGER.warn("parcel without a size, using the default size -> {}", tag.getUUID(AbstractParcel.ID_KEY));
+			CompoundTag sizeTag = new CompoundTag();
+			Deed.DEFAULT_SIZE.save(sizeTag);
+			tag.put(AbstractParcel.SIZE_KEY, sizeTag);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.persistence;
+
+import mod.gottsch.forge.claimmyland.ClaimMyLand;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * single background thread that writes the parcel data to disk.
+ * the queue is bounded; if the writer falls behind, the submitting (server) thread
+ * waits for space in the queue rather than queuing an unbounded amount of data.
+ * the writes are never run on the submitting thread, so all tasks (shards, index, journal segment deletes)
+ * are executed in submission order, and later writes of a shard always win.
+ */
+public final class ParcelSaveExecutor {
+	private static final int QUEUE_CAPACITY = 8;
+	private static final long FLUSH_TIMEOUT_SECONDS = 60;
+
+	private static ThreadPoolExecutor executor;
+
+	private ParcelSaveExecutor() {}
+
+	/**
+	 *
+	 * @param task
+	 */
+	public static synchronized void submit(Runnable task) {
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+					runnable -> {
+						Thread thread = new Thread(runnable, ClaimMyLand.MOD_ID + "-save");
+						thread.setDaemon(true);
+						return thread;
+					},
+					ParcelSaveExecutor::waitForSpace);
+		}
+		executor.execute(() -> {
+			try {
+				task.run();
+			} catch (Exception e) {
+				ClaimMyLand.LOGGER.error("an error occurred saving parcel data:", e);
+			}
+		});
+	}
+
+	/**
+	 * blocks the submitter until the task can be queued behind the earlier writes
+	 */
+	private static void waitForSpace(Runnable task, ThreadPoolExecutor executor) {
+		if (executor.isShutdown()) {
+			throw new RejectedExecutionException("parcel save executor is shut down");
+		}
+		try {
+			executor.getQueue().put(task);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("interrupted waiting to queue a parcel write", e);
+		}
+	}
+
+	/**
+	 * waits for all pending writes to complete and stops the thread ie. on server stop.
+	 */
+	public static synchronized void flush() {
+		if (executor == null) {
+			return;
+		}
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				ClaimMyLand.LOGGER.warn("timed out waiting for parcel data to be saved, pending writes -> {}", executor.getQueue().size());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		executor = null;
+	}
+
+	/**
+	 * the number of writes waiting to be executed
+	 * @return
+	 */
+	public static synchronized int getPendingCount() {
+		return executor == null ? 0 : executor.getQueue().size() + executor.getActiveCount();
+	}
+}
@@ -0,0 +1,378 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.persistence;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import mod.gottsch.forge.claimmyland.ClaimMyLand;
+import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
+import mod.gottsch.forge.claimmyland.core.registry.ParcelRegistry;
+import mod.gottsch.forge.gottschcore.spatial.Box;
+import mod.gottsch.forge.gottschcore.spatial.ICoords;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.world.level.ChunkPos;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * file storage of parcels sharded by region (512x512 blocks of the parcel coords).
+ * each shard is the gzip compressed binary encoding (ParcelCodec) of the parcels in that region,
+ * so a save only rewrites the shards that changed.
+ * uncompressed binary shards (written before compression) are still read.
+ * legacy shards (compressed registry tags) are still read, and are replaced on the next save.
+ */
+public class ParcelShardStorage implements ParcelStore {
+	// 512 blocks per shard
+	public static final int SHARD_SHIFT = 9;
+
+	private static final String SHARD_EXTENSION = ".bin";
+	private static final String LEGACY_SHARD_EXTENSION = ".dat";
+	private static final String CORRUPT_EXTENSION = ".corrupt";
+	private static final Pattern SHARD_NAME = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.(bin|dat)");
+
+	private final Path directory;
+
+	// legacy shards were loaded ie. all shards are to be re-written
+	private volatile boolean migrationRequired;
+
+	// the first bytes of a gzip stream. the codec's magic never starts with them.
+	private static final int GZIP_MAGIC_0 = 0x1f;
+	private static final int GZIP_MAGIC_1 = 0x8b;
+
+	// crc32 of each (binary) shard on disk, used to stamp the persisted index
+	private final Long2IntMap checksums = new Long2IntOpenHashMap();
+
+	// unreadable shards that couldn't be moved aside. they are never overwritten.
+	private final LongSet unreadable = LongSets.synchronize(new LongOpenHashSet());
+
+	/**
+	 *
+	 * @param directory
+	 */
+	public ParcelShardStorage(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * the shard key of the region that contains the coords
+	 * @param coords
+	 * @return
+	 */
+	public static long getShardKey(ICoords coords) {
+		return ChunkPos.asLong(coords.getX() >> SHARD_SHIFT, coords.getZ() >> SHARD_SHIFT);
+	}
+
+	/**
+	 * reads all the shards. the shards are decoded in parallel on a fork-join pool.
+	 * @return the parcels of all the shards
+	 */
+	@Override
+	public List<Parcel> load() {
+		migrationRequired = false;
+		synchronized (checksums) {
+			checksums.clear();
+		}
+		if (!Files.isDirectory(directory)) {
+			return new ArrayList<>();
+		}
+		List<Path> shards;
+		try (Stream<Path> files = Files.list(directory)) {
+			shards = files.filter(file -> SHARD_NAME.matcher(file.getFileName().toString()).matches()).toList();
+		} catch (IOException e) {
+			ClaimMyLand.LOGGER.error("unable to list parcel shards in -> {}", directory, e);
+			return new ArrayList<>();
+		}
+
+		List<List<Parcel>> decoded;
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+		try {
+			// a parallel stream run from within the pool uses the pool's workers
+			decoded = pool.submit(() -> shards.parallelStream().map(this::loadShard).toList()).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			decoded = shards.stream().map(this::loadShard).toList();
+		} catch (ExecutionException e) {
+			ClaimMyLand.LOGGER.error("unable to decode parcel shards in parallel:", e);
+			decoded = shards.stream().map(this::loadShard).toList();
+		} finally {
+			pool.shutdown();
+		}
+
+		List<Parcel> parcels = new ArrayList<>(decoded.stream().mapToInt(List::size).sum());
+		decoded.forEach(parcels::addAll);
+		return parcels;
+	}
+
+	/**
+	 * decodes a single shard. an unreadable shard is logged and quarantined (see quarantine()).
+	 * @param file
+	 * @return
+	 */
+	private List<Parcel> loadShard(Path file) {
+		if (file.getFileName().toString().endsWith(LEGACY_SHARD_EXTENSION)) {
+			return loadLegacy(file);
+		}
+		try {
+			byte[] data = Files.readAllBytes(file);
+			List<Parcel> parcels = decode(data);
+			putChecksum(getShardKey(file), data);
+			return parcels;
+		} catch (IOException e) {
+			ClaimMyLand.LOGGER.error("unable to read parcel shard -> {}", file, e);
+			quarantine(file);
+			return List.of();
+		}
+	}
+
+	private List<Parcel> loadLegacy(Path file) {
+		// the binary shard supersedes the legacy shard ie. the legacy shard wasn't deleted after a save
+		String name = file.getFileName().toString();
+		if (Files.exists(file.resolveSibling(name.substring(0, name.length() - LEGACY_SHARD_EXTENSION.length()) + SHARD_EXTENSION))) {
+			return List.of();
+		}
+		try (InputStream stream = Files.newInputStream(file)) {
+			List<Parcel> parcels = ParcelRegistry.createParcels(NbtIo.readCompressed(stream), ParcelMigrator.NBT_SHARDS);
+			migrationRequired = true;
+			return parcels;
+		} catch (IOException e) {
+			ClaimMyLand.LOGGER.error("unable to read parcel shard -> {}", file, e);
+			quarantine(file);
+			return List.of();
+		}
+	}
+
+	/**
+	 * moves an unreadable shard aside (.corrupt), so that the next save of its region
+	 * doesn't overwrite the only copy of its parcels. the file can then be repaired or restored by hand.
+	 * if the file can't be moved, the saves of its region are refused instead.
+	 * @param file
+	 */
+	private void quarantine(Path file) {
+		Path target = file.resolveSibling(file.getFileName() + CORRUPT_EXTENSION);
+		for (int i = 1; Files.exists(target); i++) {
+			target = file.resolveSibling(file.getFileName() + CORRUPT_EXTENSION + "." + i);
+		}
+		try {
+			Files.move(file, target);
+			ClaimMyLand.LOGGER.error("unreadable parcel shard moved to -> {}", target);
+		} catch (IOException e) {
+			ClaimMyLand.LOGGER.error("unable to quarantine parcel shard, its region will not be saved -> {}", file, e);
+			unreadable.add(getShardKey(file));
+		}
+	}
+
+	@Override
+	public List<Parcel> loadShard(long key) throws IOException {
+		Path file = getShardFile(key);
+		if (Files.exists(file)) {
+			return decode(Files.readAllBytes(file));
+		}
+		Path legacy = getLegacyShardFile(key);
+		if (Files.exists(legacy)) {
+			try (InputStream stream = Files.newInputStream(legacy)) {
+				return ParcelRegistry.createParcels(NbtIo.readCompressed(stream), ParcelMigrator.NBT_SHARDS);
+			}
+		}
+		return new ArrayList<>();
+	}
+
+	/**
+	 * reads all the shards and filters them, as a parcel can extend from its shard into any other.
+	 * @param box
+	 * @return
+	 * @throws IOException
+	 */
+	@Override
+	public List<Parcel> find(Box box) throws IOException {
+		List<Parcel> parcels = new ArrayList<>();
+		if (!Files.isDirectory(directory)) {
+			return parcels;
+		}
+		LongSet keys = new LongOpenHashSet();
+		try (Stream<Path> files = Files.list(directory)) {
+			files.filter(file -> SHARD_NAME.matcher(file.getFileName().toString()).matches())
+					.forEach(file -> keys.add(getShardKey(file)));
+		}
+		for (long key : keys) {
+			for (Parcel parcel : loadShard(key)) {
+				if (intersects(parcel.getBox(), box)) {
+					parcels.add(parcel);
+				}
+			}
+		}
+		return parcels;
+	}
+
+	private static boolean intersects(Box a, Box b) {
+		return a.getMinCoords().getX() <= b.getMaxCoords().getX() && a.getMaxCoords().getX() >= b.getMinCoords().getX()
+				&& a.getMinCoords().getY() <= b.getMaxCoords().getY() && a.getMaxCoords().getY() >= b.getMinCoords().getY()
+				&& a.getMinCoords().getZ() <= b.getMaxCoords().getZ() && a.getMaxCoords().getZ() >= b.getMinCoords().getZ();
+	}
+
+	/**
+	 * decodes the bytes of a shard file, which are compressed unless the shard predates compression.
+	 * @param data
+	 * @return
+	 * @throws IOException
+	 */
+	private static List<Parcel> decode(byte[] data) throws IOException {
+		InputStream stream = new ByteArrayInputStream(data);
+		if (data.length > 1 && (data[0] & 0xff) == GZIP_MAGIC_0 && (data[1] & 0xff) == GZIP_MAGIC_1) {
+			stream = new GZIPInputStream(stream, 8192);
+		}
+		try (DataInputStream input = new DataInputStream(stream)) {
+			return ParcelCodec.decode(input);
+		}
+	}
+
+	private static byte[] compress(byte[] data) throws IOException {
+		// the encoded uuids and coords typically compress to less than half
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2 + 32);
+		try (OutputStream output = new GZIPOutputStream(bytes)) {
+			output.write(data);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * writes the shards. a null value deletes the shard ie. the region no longer has any parcels.
+	 * @param shards the encoded shards by key. they are compressed as they are written.
+	 * @return true if all the shards were written
+	 */
+	@Override
+	public boolean save(Long2ObjectMap<byte[]> shards) {
+		if (shards.isEmpty()) {
+			return true;
+		}
+		try {
+			Files.createDirectories(directory);
+		} catch (IOException e) {
+			ClaimMyLand.LOGGER.error("unable to create parcel shard directory -> {}", directory, e);
+			return false;
+		}
+		boolean success = true;
+		for (Long2ObjectMap.Entry<byte[]> shard : shards.long2ObjectEntrySet()) {
+			success &= save(shard.getLongKey(), shard.getValue());
+		}
+		return success;
+	}
+
+	/**
+	 * writes to a temp file and then moves it over the shard, so a shard is never partially written.
+	 * @param key
+	 * @param data
+	 */
+	private boolean save(long key, byte[] data) {
+		Path file = getShardFile(key);
+		if (unreadable.contains(key)) {
+			ClaimMyLand.LOGGER.error("refusing to overwrite unreadable parcel shard -> {}", file);
+			return false;
+		}
+		try {
+			if (data != null) {
+				byte[] compressed = compress(data);
+				Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+				Files.write(temp, compressed);
+				try {
+					Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+				}
+				putChecksum(key, compressed);
+			} else {
+				Files.deleteIfExists(file);
+				synchronized (checksums) {
+					checksums.remove(key);
+				}
+			}
+			// the shard has been migrated or deleted
+			Files.deleteIfExists(getLegacyShardFile(key));
+			return true;
+		} catch (IOException e) {
+			ClaimMyLand.LOGGER.error("unable to write parcel shard -> {}", file, e);
+			return false;
+		}
+	}
+
+	private void putChecksum(long key, byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		synchronized (checksums) {
+			checksums.put(key, (int) crc.getValue());
+		}
+	}
+
+	/**
+	 * an order independent hash of the checksums of all the shards on disk.
+	 * it changes whenever any shard is written or deleted.
+	 * @return
+	 */
+	@Override
+	public long getStamp() {
+		synchronized (checksums) {
+			return ParcelStore.getStamp(checksums);
+		}
+	}
+
+	private static long getShardKey(Path file) {
+		Matcher matcher = SHARD_NAME.matcher(file.getFileName().toString());
+		if (!matcher.matches()) {
+			throw new IllegalArgumentException("not a parcel shard -> " + file);
+		}
+		return ChunkPos.asLong(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+	}
+
+	public Path getShardFile(long key) {
+		return directory.resolve("r." + ChunkPos.getX(key) + "." + ChunkPos.getZ(key) + SHARD_EXTENSION);
+	}
+
+	private Path getLegacyShardFile(long key) {
+		return directory.resolve("r." + ChunkPos.getX(key) + "." + ChunkPos.getZ(key) + LEGACY_SHARD_EXTENSION);
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	@Override
+	public boolean isMigrationRequired() {
+		return migrationRequired;
+	}
+}
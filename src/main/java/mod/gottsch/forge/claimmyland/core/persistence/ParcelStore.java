@@ -0,0 +1,103 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.persistence;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
+import mod.gottsch.forge.gottschcore.spatial.Box;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * storage backend of the parcels. the registry is saved by region shard (see ParcelShardStorage.getShardKey()),
+ * so a store only receives the shards that changed, encoded (ParcelCodec) from snapshots of their parcels.
+ * a store's save() is called from the save thread.
+ */
+public interface ParcelStore {
+
+	enum Type {
+		// region shard files
+		FILE,
+		// a sql database via jdbc
+		JDBC
+	}
+
+	/**
+	 * reads all the parcels
+	 * @return
+	 */
+	List<Parcel> load();
+
+	/**
+	 * reads the parcels of a shard ie. to export it
+	 * @param key
+	 * @return
+	 * @throws IOException
+	 */
+	List<Parcel> loadShard(long key) throws IOException;
+
+	/**
+	 * reads the parcels whose absolute bounds intersect the box (inclusive) ie. for admin tools.
+	 * the registry itself is always loaded in full with load().
+	 * @param box
+	 * @return
+	 * @throws IOException
+	 */
+	List<Parcel> find(Box box) throws IOException;
+
+	/**
+	 * writes the changed shards. a null value means the shard no longer has any parcels.
+	 * @param shards the encoded shards by key
+	 * @return true if all the shards were written
+	 */
+	boolean save(Long2ObjectMap<byte[]> shards);
+
+	/**
+	 * a value that changes whenever any shard is written or deleted ie. to validate the persisted index
+	 * @return
+	 */
+	long getStamp();
+
+	/**
+	 * true if the parcels were loaded from a legacy format, and all the shards are to be re-written.
+	 * @return
+	 */
+	default boolean isMigrationRequired() {
+		return false;
+	}
+
+	default void close() {}
+
+	/**
+	 * an order independent hash of the checksums of the shards
+	 * @param checksums the crc32 of each shard by key
+	 * @return
+	 */
+	static long getStamp(Long2IntMap checksums) {
+		long stamp = checksums.size();
+		for (Long2IntMap.Entry entry : checksums.long2IntEntrySet()) {
+			stamp += HashCommon.mix(entry.getLongKey() * 31 + entry.getIntValue());
+		}
+		return stamp;
+	}
+}
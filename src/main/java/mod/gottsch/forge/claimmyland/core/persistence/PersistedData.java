@@ -19,7 +19,12 @@
  */
 package mod.gottsch.forge.claimmyland.core.persistence;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import mod.gottsch.forge.claimmyland.ClaimMyLand;
+import mod.gottsch.forge.claimmyland.core.config.Config;
+import mod.gottsch.forge.claimmyland.core.config.ConfigSnapshot;
+import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
 import mod.gottsch.forge.claimmyland.core.registry.ParcelRegistry;
 import mod.gottsch.forge.claimmyland.core.registry.PlayerRegistry;
 import net.minecraft.nbt.CompoundTag;
@@ -27,6 +32,14 @@ import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.saveddata.SavedData;
 import net.minecraft.world.level.storage.DimensionDataStorage;
+import net.minecraft.world.level.storage.LevelResource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * 
@@ -35,44 +48,260 @@ import net.minecraft.world.level.storage.DimensionDataStorage;
  */
 public class PersistedData extends SavedData {
 
+	// legacy monolithic registry. parcels are now persisted in region shards.
 	private static final String PARCEL_REGISTRY = "parcel_registry";
 	private static final String PLAYER_REGISTRY = "player_registry";
-	
+	// the schema version of the persisted registry (see ParcelMigrator)
+	private static final String VERSION_KEY = "version";
+	private static final String PARCELS_DIRECTORY = "parcels";
+
+	// the store that is open for the server, closed on server stop
+	private static ParcelStore openStore;
+
+	private final ParcelStore parcelStore;
+	// the parcels directory, that holds the journal and index (and the shards of the file store)
+	private final Path directory;
+	private final ParcelIndexStorage indexStorage;
+	private ParcelJournal journal;
+	// the config hash of the index on disk, null if there isn't a valid index
+	private Integer indexConfigHash;
+	// true while a migrated monolithic registry has not yet been written to the store
+	private volatile boolean migrating;
+
+	/**
+	 *
+	 * @param parcelStore
+	 * @param directory
+	 */
+	public PersistedData(ParcelStore parcelStore, Path directory) {
+		this.parcelStore = parcelStore;
+		this.directory = directory;
+		this.indexStorage = new ParcelIndexStorage(directory);
+	}
+
 	/**
 	 * 
 	 * @return
 	 */
-	public static PersistedData create() {
-		return new PersistedData();
+	public static PersistedData create(ParcelStore parcelStore, Path directory) {
+		PersistedData data = new PersistedData(parcelStore, directory);
+		data.loadShards();
+		data.openJournal();
+		return data;
 	}
 
-	public static PersistedData load(CompoundTag tag) {
+	public static PersistedData load(CompoundTag tag, ParcelStore parcelStore, Path directory) {
 		ClaimMyLand.LOGGER.debug("loading world data...");
+		PersistedData data = new PersistedData(parcelStore, directory);
+		// data without a version predates the versioning ie. it is either the monolithic registry or the nbt shards
+		int version = tag.contains(VERSION_KEY) ? tag.getInt(VERSION_KEY)
+				: tag.contains(PARCEL_REGISTRY) ? ParcelMigrator.MONOLITHIC : ParcelMigrator.NBT_SHARDS;
+		if (version > ParcelMigrator.SCHEMA_VERSION) {
+			ClaimMyLand.LOGGER.warn("parcel registry schema version {} is newer than the supported version {}", version, ParcelMigrator.SCHEMA_VERSION);
+		}
 		if (tag.contains(PARCEL_REGISTRY)) {
-			ParcelRegistry.load(tag.getCompound(PARCEL_REGISTRY));
+			// migrate the monolithic registry to shards on the next save
+			ClaimMyLand.LOGGER.info("migrating parcel registry from schema version {} to region shards...", version);
+			ParcelRegistry.load(tag.getCompound(PARCEL_REGISTRY), Math.min(version, ParcelMigrator.MONOLITHIC));
+			ParcelRegistry.markAllDirty();
+			data.migrating = true;
+			data.setDirty();
+		} else {
+			data.loadShards();
 		}
+		data.openJournal();
 		if (tag.contains(PLAYER_REGISTRY)) {
 			PlayerRegistry.load(tag.getCompound(PLAYER_REGISTRY));
 		}
-		return create();
+		return data;
+	}
+
+	private void loadShards() {
+		List<Parcel> parcels = parcelStore.load();
+		boolean migrationRequired = parcelStore.isMigrationRequired();
+		if (parcels.isEmpty() && !(parcelStore instanceof ParcelShardStorage)) {
+			// switching stores ie. import the existing shard files
+			ParcelShardStorage shards = new ParcelShardStorage(directory);
+			parcels = shards.load();
+			if (!parcels.isEmpty()) {
+				ClaimMyLand.LOGGER.info("migrating {} parcels from the shard files to the {} store...", parcels.size(), Config.SERVER.persistence.storeType.get());
+				migrationRequired = true;
+			}
+		}
+
+		ParcelIndexStorage.Index index = null;
+		if (Config.SERVER.persistence.enableIndexCache.get() && !migrationRequired) {
+			int configHash = ParcelIndexStorage.getConfigHash(ConfigSnapshot.get());
+			index = indexStorage.load(parcelStore.getStamp(), configHash).orElse(null);
+			if (index != null) {
+				indexConfigHash = configHash;
+			}
+		}
+		ParcelRegistry.loadParcels(parcels, index);
+		if (migrationRequired) {
+			// re-write all the shards in the current format / store
+			ClaimMyLand.LOGGER.info("migrating parcel shards...");
+			ParcelRegistry.markAllDirty();
+			setDirty();
+		}
+	}
+
+	/**
+	 * replays any existing journal on top of the loaded shards, and (if enabled) opens the journal
+	 * for the registry to append its changes to.
+	 */
+	private void openJournal() {
+		journal = new ParcelJournal(directory, Config.SERVER.persistence.journalCompactionSize.get() * 1024L);
+		int replayed = ParcelRegistry.replay(journal);
+		if (replayed > 0) {
+			ClaimMyLand.LOGGER.info("replayed {} parcel journal records", replayed);
+			// persist the recovered changes
+			setDirty();
+		}
+		if (Config.SERVER.persistence.enableJournal.get()) {
+			try {
+				journal.open();
+				ParcelRegistry.setJournal(journal);
+			} catch (IOException e) {
+				ClaimMyLand.LOGGER.error("unable to open parcel journal:", e);
+			}
+		}
 	}
 
 	@Override
 	public CompoundTag save(CompoundTag tag) {
 		ClaimMyLand.LOGGER.debug("saving world data...");
-		tag.put(PARCEL_REGISTRY, ParcelRegistry.save(new CompoundTag()));
+		CompletableFuture<Boolean> saved = saveParcels();
+		tag.putInt(VERSION_KEY, ParcelMigrator.SCHEMA_VERSION);
+		if (migrating) {
+			// the monolithic registry is kept, with the current parcels, until the shards have been written once.
+			// otherwise a failed (or interrupted) write of the shards would lose every parcel.
+			tag.put(PARCEL_REGISTRY, ParcelRegistry.save(new CompoundTag()));
+			saved.thenAccept(written -> {
+				if (written) {
+					ClaimMyLand.LOGGER.info("migrated parcel registry to region shards");
+					migrating = false;
+					// drop the monolithic registry on the next save
+					setDirty();
+				}
+			});
+		}
 		tag.put(PLAYER_REGISTRY, PlayerRegistry.save(new CompoundTag()));
 		return tag;
 	}
-	
+
+	/**
+	 * writes the changed parcel shards. this is also the journal compaction - once the shards are written,
+	 * the journal segments they cover are deleted.
+	 * the changed parcels are snapshot here (server thread), the encoding and file writes can be done off-thread.
+	 * @return completes with true once the shards are written, or false if they couldn't be written
+	 */
+	public CompletableFuture<Boolean> saveParcels() {
+		Long2ObjectMap<List<ParcelCodec.Snapshot>> snapshots = ParcelRegistry.snapshotDirtyShards();
+		// all the journal records up to this point are covered by the shards
+		long segment = journal != null ? journal.rotate() : -1;
+
+		// the index is re-written with any changed shards, or when there isn't a valid one
+		Supplier<byte[]> index = null;
+		int configHash = ParcelIndexStorage.getConfigHash(ConfigSnapshot.get());
+		if (Config.SERVER.persistence.enableIndexCache.get()
+				&& (!snapshots.isEmpty() || indexConfigHash == null || indexConfigHash != configHash)) {
+			index = ParcelRegistry.snapshotIndex();
+			indexConfigHash = configHash;
+		}
+		if (snapshots.isEmpty() && segment < 0 && index == null) {
+			return CompletableFuture.completedFuture(true);
+		}
+
+		Supplier<byte[]> indexEntries = index;
+		CompletableFuture<Boolean> written = new CompletableFuture<>();
+		Runnable write = () -> {
+			boolean saved;
+			try {
+				Long2ObjectMap<byte[]> shards = new Long2ObjectOpenHashMap<>(snapshots.size());
+				snapshots.long2ObjectEntrySet().forEach(entry ->
+						shards.put(entry.getLongKey(), entry.getValue() == null ? null : ParcelCodec.encodeSnapshots(entry.getValue())));
+				saved = parcelStore.save(shards);
+			} catch (RuntimeException e) {
+				ClaimMyLand.LOGGER.error("unable to encode the parcel shards:", e);
+				saved = false;
+			}
+			if (saved) {
+				if (journal != null) {
+					journal.deleteSegments(segment);
+				}
+				if (indexEntries != null) {
+					// stamped with the shards as written
+					indexStorage.save(indexEntries.get(), parcelStore.getStamp(), configHash);
+				}
+			} else {
+				// keep the journal and try again on the next save
+				ParcelRegistry.markDirty(snapshots.keySet());
+				indexStorage.delete();
+			}
+			written.complete(saved);
+		};
+		if (Config.SERVER.persistence.enableAsyncSave.get()) {
+			ParcelSaveExecutor.submit(write);
+		} else {
+			write.run();
+		}
+		return written;
+	}
+
 	/**
 	 * @param world
 	 * @return
 	 */
 	public static PersistedData get(Level world) {
-		DimensionDataStorage storage = ((ServerLevel)world).getDataStorage();
+		// the registry is global, so the data is always held by the overworld
+		DimensionDataStorage storage = ((ServerLevel)world).getServer().overworld().getDataStorage();
 		PersistedData data = (PersistedData) storage.computeIfAbsent(
-				PersistedData::load, PersistedData::create, ClaimMyLand.MOD_ID);
+				tag -> PersistedData.load(tag, createParcelStore(world), getDirectory(world)),
+				() -> PersistedData.create(createParcelStore(world), getDirectory(world)),
+				ClaimMyLand.MOD_ID);
 		return data;
 	}
+
+	/**
+	 * the parcels are stored in data/claimmyland/parcels of the world save, or in the configured database.
+	 * an unavailable database falls back to the shard files.
+	 * @param world
+	 * @return
+	 */
+	private static synchronized ParcelStore createParcelStore(Level world) {
+		closeStore();
+		Path directory = getDirectory(world);
+		if (Config.SERVER.persistence.storeType.get() == ParcelStore.Type.JDBC) {
+			String url = Config.SERVER.persistence.jdbcUrl.get()
+					.replace("{world}", ((ServerLevel)world).getServer().getWorldPath(LevelResource.ROOT).toAbsolutePath().normalize().toString());
+			try {
+				openStore = new JdbcParcelStore(url);
+				return openStore;
+			} catch (SQLException e) {
+				ClaimMyLand.LOGGER.error("unable to open parcel database -> {}, using the shard files", url, e);
+			}
+		}
+		openStore = new ParcelShardStorage(directory);
+		return openStore;
+	}
+
+	private static Path getDirectory(Level world) {
+		return ((ServerLevel)world).getServer().getWorldPath(LevelResource.ROOT)
+				.resolve("data").resolve(ClaimMyLand.MOD_ID).resolve(PARCELS_DIRECTORY);
+	}
+
+	/**
+	 * closes the store ie. on server stop, after the pending saves are written.
+	 */
+	public static synchronized void closeStore() {
+		if (openStore != null) {
+			openStore.close();
+			openStore = null;
+		}
+	}
+
+	public ParcelStore getParcelStore() {
+		return parcelStore;
+	}
 }
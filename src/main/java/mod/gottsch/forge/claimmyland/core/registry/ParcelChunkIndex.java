@@ -0,0 +1,175 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.registry;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
+import net.minecraft.world.level.ChunkPos;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * spatial hash of parcels by chunk column.
+ * each packed chunk position maps to the (small) array of entries that overlap that column,
+ * so a point query is a single hash probe plus a short scan of boxes.
+ * note - the arrays are copy-on-write; they are never mutated once published.
+ */
+public class ParcelChunkIndex {
+    private static final ParcelIndexEntry[] EMPTY = new ParcelIndexEntry[0];
+
+    private final Long2ObjectOpenHashMap<ParcelIndexEntry[]> chunks = new Long2ObjectOpenHashMap<>();
+    // the entry that was indexed per parcel, required for removal as the bounds are not recomputed.
+    private final Map<UUID, ParcelIndexEntry> entries = new HashMap<>();
+
+    public void clear() {
+        chunks.clear();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     *
+     * @param entry
+     */
+    public void add(ParcelIndexEntry entry) {
+        // replace any previous entry for the same parcel
+        remove(entry.getParcel().getId());
+        entries.put(entry.getParcel().getId(), entry);
+
+        for (int chunkX = entry.getMinX() >> 4; chunkX <= entry.getMaxX() >> 4; chunkX++) {
+            for (int chunkZ = entry.getMinZ() >> 4; chunkZ <= entry.getMaxZ() >> 4; chunkZ++) {
+                long key = ChunkPos.asLong(chunkX, chunkZ);
+                ParcelIndexEntry[] column = chunks.get(key);
+                if (column == null) {
+                    chunks.put(key, new ParcelIndexEntry[] {entry});
+                } else {
+                    ParcelIndexEntry[] newColumn = new ParcelIndexEntry[column.length + 1];
+                    System.arraycopy(column, 0, newColumn, 0, column.length);
+                    newColumn[column.length] = entry;
+                    chunks.put(key, newColumn);
+                }
+            }
+        }
+    }
+
+    /**
+     * removes the entry for the parcel id from all chunk columns it was indexed in.
+     * @param parcelId
+     * @return the removed entry or null
+     */
+    public ParcelIndexEntry remove(UUID parcelId) {
+        ParcelIndexEntry entry = entries.remove(parcelId);
+        if (entry == null) {
+            return null;
+        }
+
+        for (int chunkX = entry.getMinX() >> 4; chunkX <= entry.getMaxX() >> 4; chunkX++) {
+            for (int chunkZ = entry.getMinZ() >> 4; chunkZ <= entry.getMaxZ() >> 4; chunkZ++) {
+                long key = ChunkPos.asLong(chunkX, chunkZ);
+                ParcelIndexEntry[] column = chunks.get(key);
+                if (column == null) {
+                    continue;
+                }
+                int position = -1;
+                for (int i = 0; i < column.length; i++) {
+                    if (column[i] == entry) {
+                        position = i;
+                        break;
+                    }
+                }
+                if (position < 0) {
+                    continue;
+                }
+                if (column.length == 1) {
+                    chunks.remove(key);
+                } else {
+                    ParcelIndexEntry[] newColumn = new ParcelIndexEntry[column.length - 1];
+                    System.arraycopy(column, 0, newColumn, 0, position);
+                    System.arraycopy(column, position + 1, newColumn, position, column.length - position - 1);
+                    chunks.put(key, newColumn);
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * returns the entries that overlap the chunk column containing the block x, z.
+     * the returned array must not be modified.
+     * @param x block x
+     * @param z block z
+     * @return
+     */
+    public ParcelIndexEntry[] getColumn(int x, int z) {
+        ParcelIndexEntry[] column = chunks.get(ChunkPos.asLong(x >> 4, z >> 4));
+        return column == null ? EMPTY : column;
+    }
+
+    /**
+     * returns all parcels that contain the block pos
+     */
+    public List<Parcel> find(int x, int y, int z) {
+        ParcelIndexEntry[] column = getColumn(x, z);
+        if (column.length == 0) {
+            return new ArrayList<>();
+        }
+        List<Parcel> parcels = new ArrayList<>(column.length);
+        for (ParcelIndexEntry entry : column) {
+            if (entry.contains(x, y, z)) {
+                parcels.add(entry.getParcel());
+            }
+        }
+        return parcels;
+    }
+
+    /**
+     * returns the parcel with the least area that contains the block pos, or null.
+     */
+    public Parcel findLeastSignificant(int x, int y, int z) {
+        ParcelIndexEntry found = findLeastSignificantEntry(x, y, z);
+        return found == null ? null : found.getParcel();
+    }
+
+    public ParcelIndexEntry findLeastSignificantEntry(int x, int y, int z) {
+        ParcelIndexEntry found = null;
+        for (ParcelIndexEntry entry : getColumn(x, z)) {
+            if (entry.contains(x, y, z) && (found == null || entry.getArea() < found.getArea())) {
+                found = entry;
+            }
+        }
+        return found;
+    }
+
+    public boolean intersects(int x, int y, int z) {
+        for (ParcelIndexEntry entry : getColumn(x, z)) {
+            if (entry.contains(x, y, z)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
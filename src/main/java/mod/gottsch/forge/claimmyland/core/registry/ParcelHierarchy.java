@@ -0,0 +1,255 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.registry;
+
+import java.util.*;
+
+/**
+ * containment tree of parcels ie. nation -> zone -> citizen.
+ * top level parcels (player, nation) are held in a chunk index, and each parcel holds
+ * the parcels that it fully encloses, also indexed by chunk once there are more than a few.
+ * resolving the most specific parcel at a point descends at most a few levels, scanning only
+ * the parcels of the chunk column at each level, instead of gathering and comparing all overlaps.
+ */
+public class ParcelHierarchy {
+    private static final ParcelIndexEntry[] EMPTY = new ParcelIndexEntry[0];
+    // the number of children above which they are indexed by chunk
+    private static final int INDEX_THRESHOLD = 8;
+
+    // top level parcels
+    private final ParcelChunkIndex roots = new ParcelChunkIndex();
+    // parent parcel id -> enclosed parcels
+    private final Map<UUID, Children> children = new HashMap<>();
+    // child parcel id -> parent. root parcels are not in this map
+    private final Map<UUID, ParcelIndexEntry> parents = new HashMap<>();
+    private final Map<UUID, ParcelIndexEntry> entries = new HashMap<>();
+
+    public void clear() {
+        roots.clear();
+        children.clear();
+        parents.clear();
+        entries.clear();
+    }
+
+    /**
+     * adds all the entries, largest first, so that every parent is in place before its children.
+     * @param list
+     */
+    public void build(Collection<ParcelIndexEntry> list) {
+        clear();
+        list.stream()
+                .sorted(Comparator.comparingInt(ParcelIndexEntry::getArea).reversed())
+                .forEach(this::add);
+    }
+
+    /**
+     *
+     * @param entry
+     */
+    public void add(ParcelIndexEntry entry) {
+        remove(entry.getParcel().getId());
+        entries.put(entry.getParcel().getId(), entry);
+
+        ParcelIndexEntry parent = findParent(entry);
+
+        // find the existing parcels (at the same level) that the new parcel encloses
+        List<ParcelIndexEntry> adopted = new ArrayList<>();
+        if (parent == null) {
+            Set<ParcelIndexEntry> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int chunkX = entry.getMinX() >> 4; chunkX <= entry.getMaxX() >> 4; chunkX++) {
+                for (int chunkZ = entry.getMinZ() >> 4; chunkZ <= entry.getMaxZ() >> 4; chunkZ++) {
+                    for (ParcelIndexEntry root : roots.getColumn(chunkX << 4, chunkZ << 4)) {
+                        if (seen.add(root) && encloses(entry, root)) {
+                            adopted.add(root);
+                        }
+                    }
+                }
+            }
+        } else {
+            Children siblings = children.get(parent.getParcel().getId());
+            for (ParcelIndexEntry sibling : siblings == null ? EMPTY : siblings.entries) {
+                if (encloses(entry, sibling)) {
+                    adopted.add(sibling);
+                }
+            }
+        }
+
+        attach(entry, parent);
+        adopted.forEach(child -> {
+            detach(child);
+            attach(child, entry);
+        });
+    }
+
+    /**
+     * removes the parcel. its children are moved up to its parent.
+     * @param parcelId
+     */
+    public void remove(UUID parcelId) {
+        ParcelIndexEntry entry = entries.remove(parcelId);
+        if (entry == null) {
+            return;
+        }
+        ParcelIndexEntry parent = parents.get(parcelId);
+        detach(entry);
+        Children orphans = children.remove(parcelId);
+        if (orphans != null) {
+            for (ParcelIndexEntry orphan : orphans.entries) {
+                parents.remove(orphan.getParcel().getId());
+                attach(orphan, parent);
+            }
+        }
+    }
+
+    /**
+     * returns the most specific (least significant) entry at the block pos, or null.
+     * this is the containing entry with the least area, as for ParcelChunkIndex.findLeastSignificantEntry().
+     * every containing branch is descended, as overlapping (non-nested) parcels at the same level
+     * can each hold a smaller containing parcel.
+     */
+    public ParcelIndexEntry findLeastSignificant(int x, int y, int z) {
+        return findLeastSignificant(roots.getColumn(x, z), x, y, z, null);
+    }
+
+    private ParcelIndexEntry findLeastSignificant(ParcelIndexEntry[] level, int x, int y, int z, ParcelIndexEntry found) {
+        for (ParcelIndexEntry entry : level) {
+            if (entry.contains(x, y, z)) {
+                if (found == null || entry.getArea() < found.getArea()) {
+                    found = entry;
+                }
+                Children descendants = children.get(entry.getParcel().getId());
+                if (descendants != null) {
+                    found = findLeastSignificant(descendants.getColumn(x, z), x, y, z, found);
+                }
+            }
+        }
+        return found;
+    }
+
+    public Optional<ParcelIndexEntry> getParent(UUID parcelId) {
+        return Optional.ofNullable(parents.get(parcelId));
+    }
+
+    public List<ParcelIndexEntry> getChildren(UUID parcelId) {
+        Children enclosed = children.get(parcelId);
+        return Arrays.asList(enclosed == null ? EMPTY : enclosed.entries);
+    }
+
+    /**
+     * the smallest existing parcel that encloses the entry
+     */
+    private ParcelIndexEntry findParent(ParcelIndexEntry entry) {
+        ParcelIndexEntry parent = null;
+        ParcelIndexEntry[] level = roots.getColumn(entry.getMinX(), entry.getMinZ());
+        while (level.length > 0) {
+            ParcelIndexEntry next = null;
+            for (ParcelIndexEntry candidate : level) {
+                if (candidate != entry && encloses(candidate, entry)
+                        && (next == null || candidate.getArea() < next.getArea())) {
+                    next = candidate;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            parent = next;
+            // a parent contains the entry's min corner, so it is in that column
+            Children enclosed = children.get(next.getParcel().getId());
+            level = enclosed == null ? EMPTY : enclosed.getColumn(entry.getMinX(), entry.getMinZ());
+        }
+        return parent;
+    }
+
+    private void attach(ParcelIndexEntry entry, ParcelIndexEntry parent) {
+        if (parent == null) {
+            roots.add(entry);
+            return;
+        }
+        children.computeIfAbsent(parent.getParcel().getId(), id -> new Children()).add(entry);
+        parents.put(entry.getParcel().getId(), parent);
+    }
+
+    private void detach(ParcelIndexEntry entry) {
+        ParcelIndexEntry parent = parents.remove(entry.getParcel().getId());
+        if (parent == null) {
+            roots.remove(entry.getParcel().getId());
+            return;
+        }
+        UUID parentId = parent.getParcel().getId();
+        Children siblings = children.get(parentId);
+        if (siblings != null && siblings.remove(entry) == 0) {
+            children.remove(parentId);
+        }
+    }
+
+    /**
+     * true if the outer box completely contains the inner box and is the larger parcel
+     */
+    private static boolean encloses(ParcelIndexEntry outer, ParcelIndexEntry inner) {
+        return outer.getArea() > inner.getArea()
+                && outer.getMinX() <= inner.getMinX() && outer.getMaxX() >= inner.getMaxX()
+                && outer.getMinY() <= inner.getMinY() && outer.getMaxY() >= inner.getMaxY()
+                && outer.getMinZ() <= inner.getMinZ() && outer.getMaxZ() >= inner.getMaxZ();
+    }
+
+    /**
+     * the parcels directly enclosed by a parcel. with more than a few, they are also
+     * held in a chunk index, so that a lookup only scans the children in the chunk column.
+     */
+    private static final class Children {
+        private ParcelIndexEntry[] entries = EMPTY;
+        private ParcelChunkIndex index;
+
+        void add(ParcelIndexEntry entry) {
+            entries = Arrays.copyOf(entries, entries.length + 1);
+            entries[entries.length - 1] = entry;
+            if (index != null) {
+                index.add(entry);
+            } else if (entries.length > INDEX_THRESHOLD) {
+                index = new ParcelChunkIndex();
+                for (ParcelIndexEntry child : entries) {
+                    index.add(child);
+                }
+            }
+        }
+
+        /**
+         * @return the number of remaining children
+         */
+        int remove(ParcelIndexEntry entry) {
+            entries = Arrays.stream(entries).filter(child -> child != entry).toArray(ParcelIndexEntry[]::new);
+            if (index != null) {
+                if (entries.length > INDEX_THRESHOLD) {
+                    index.remove(entry.getParcel().getId());
+                } else {
+                    index = null;
+                }
+            }
+            return entries.length;
+        }
+
+        /**
+         * the children that can contain a block in the column ie. all of them when not indexed
+         */
+        ParcelIndexEntry[] getColumn(int x, int z) {
+            return index != null ? index.getColumn(x, z) : entries;
+        }
+    }
+}
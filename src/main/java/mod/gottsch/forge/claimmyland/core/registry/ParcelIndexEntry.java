@@ -0,0 +1,112 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.registry;
+
+import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
+import mod.gottsch.forge.gottschcore.spatial.Box;
+
+/**
+ * an immutable snapshot of a parcel's absolute bounds, held by the registry indexes.
+ * the bounds are stored as primitives so that point tests do not have to
+ * rebuild ICoords/Box objects from the parcel on every query.
+ */
+public class ParcelIndexEntry {
+    private final Parcel parcel;
+    private final int minX;
+    private final int minY;
+    private final int minZ;
+    private final int maxX;
+    private final int maxY;
+    private final int maxZ;
+    // volume of the parcel (not the bounds), used to find the least significant parcel
+    private final int area;
+
+    public ParcelIndexEntry(Parcel parcel, Box box) {
+        this.parcel = parcel;
+        this.minX = box.getMinCoords().getX();
+        this.minY = box.getMinCoords().getY();
+        this.minZ = box.getMinCoords().getZ();
+        this.maxX = box.getMaxCoords().getX();
+        this.maxY = box.getMaxCoords().getY();
+        this.maxZ = box.getMaxCoords().getZ();
+        this.area = parcel.getArea();
+    }
+
+    public ParcelIndexEntry(Parcel parcel, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        this.parcel = parcel;
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+        this.area = parcel.getArea();
+    }
+
+    /**
+     * inclusive point test
+     */
+    public boolean contains(int x, int y, int z) {
+        return x >= minX && x <= maxX
+                && y >= minY && y <= maxY
+                && z >= minZ && z <= maxZ;
+    }
+
+    /**
+     * inclusive box test ie. touching borders intersect
+     */
+    public boolean intersects(int x1, int y1, int z1, int x2, int y2, int z2) {
+        return minX <= x2 && maxX >= x1
+                && minY <= y2 && maxY >= y1
+                && minZ <= z2 && maxZ >= z1;
+    }
+
+    public Parcel getParcel() {
+        return parcel;
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMinZ() {
+        return minZ;
+    }
+
+    public int getMaxX() {
+        return maxX;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    public int getMaxZ() {
+        return maxZ;
+    }
+
+    public int getArea() {
+        return area;
+    }
+}
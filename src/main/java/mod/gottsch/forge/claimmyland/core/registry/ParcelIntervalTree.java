@@ -0,0 +1,293 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.registry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * self-balancing (AVL) interval tree of parcel entries.
+ * nodes are ordered by the min x (then z, y and parcel id) of the entry and
+ * augmented with the max x endpoint of their subtree, so an overlap query
+ * can prune whole subtrees that end before, or start after, the query box.
+ * unlike the GottschCore CoordsIntervalTree, the depth does not depend on the insertion order.
+ */
+public class ParcelIntervalTree {
+    public static final Comparator<ParcelIndexEntry> ORDER = Comparator.comparingInt(ParcelIndexEntry::getMinX)
+            .thenComparingInt(ParcelIndexEntry::getMinZ)
+            .thenComparingInt(ParcelIndexEntry::getMinY)
+            .thenComparing(entry -> entry.getParcel().getId());
+
+    private Node root;
+    private int size;
+
+    /**
+     *
+     */
+    private static class Node {
+        private ParcelIndexEntry entry;
+        private Node left;
+        private Node right;
+        private int height;
+        // max x of this node and all its children
+        private int maxX;
+
+        Node(ParcelIndexEntry entry) {
+            this.entry = entry;
+            this.height = 1;
+            this.maxX = entry.getMaxX();
+        }
+    }
+
+    public void clear() {
+        root = null;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int height() {
+        return height(root);
+    }
+
+    /**
+     * replaces the contents of the tree with a perfectly balanced tree built from the entries.
+     * O(n log n) for the sort, O(n) for the build.
+     * @param entries
+     */
+    public void build(Collection<ParcelIndexEntry> entries) {
+        ParcelIndexEntry[] sorted = entries.toArray(new ParcelIndexEntry[0]);
+        Arrays.sort(sorted, ORDER);
+        build(sorted);
+    }
+
+    /**
+     * variant of build() where the entries are already in ORDER
+     * @param sorted
+     */
+    public void build(ParcelIndexEntry[] sorted) {
+        root = build(sorted, 0, sorted.length - 1);
+        size = sorted.length;
+    }
+
+    private Node build(ParcelIndexEntry[] sorted, int low, int high) {
+        if (low > high) {
+            return null;
+        }
+        int mid = (low + high) >>> 1;
+        Node node = new Node(sorted[mid]);
+        node.left = build(sorted, low, mid - 1);
+        node.right = build(sorted, mid + 1, high);
+        update(node);
+        return node;
+    }
+
+    /**
+     * in-order (ie. ORDER) list of all the entries
+     * @return
+     */
+    public List<ParcelIndexEntry> list() {
+        List<ParcelIndexEntry> entries = new ArrayList<>(size);
+        list(root, entries);
+        return entries;
+    }
+
+    private void list(Node node, List<ParcelIndexEntry> entries) {
+        if (node == null) {
+            return;
+        }
+        list(node.left, entries);
+        entries.add(node.entry);
+        list(node.right, entries);
+    }
+
+    public void insert(ParcelIndexEntry entry) {
+        root = insert(root, entry);
+    }
+
+    private Node insert(Node node, ParcelIndexEntry entry) {
+        if (node == null) {
+            size++;
+            return new Node(entry);
+        }
+        int compare = ORDER.compare(entry, node.entry);
+        if (compare < 0) {
+            node.left = insert(node.left, entry);
+        } else if (compare > 0) {
+            node.right = insert(node.right, entry);
+        } else {
+            node.entry = entry;
+        }
+        return balance(node);
+    }
+
+    /**
+     *
+     * @param entry
+     * @return true if the entry was found and deleted
+     */
+    public boolean delete(ParcelIndexEntry entry) {
+        int currentSize = size;
+        root = delete(root, entry);
+        return size < currentSize;
+    }
+
+    private Node delete(Node node, ParcelIndexEntry entry) {
+        if (node == null) {
+            return null;
+        }
+        int compare = ORDER.compare(entry, node.entry);
+        if (compare < 0) {
+            node.left = delete(node.left, entry);
+        } else if (compare > 0) {
+            node.right = delete(node.right, entry);
+        } else {
+            size--;
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            Node successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = deleteMin(node.right);
+            successor.left = node.left;
+            return balance(successor);
+        }
+        return balance(node);
+    }
+
+    private Node deleteMin(Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = deleteMin(node.left);
+        return balance(node);
+    }
+
+    /**
+     * find all the entries that overlap the box (x1, y1, z1) -> (x2, y2, z2).
+     * @param findFast return after the first overlap is found
+     * @param includeBorder if true, touching borders are considered overlapping
+     * @return
+     */
+    public List<ParcelIndexEntry> getOverlapping(int x1, int y1, int z1, int x2, int y2, int z2, boolean findFast, boolean includeBorder) {
+        List<ParcelIndexEntry> entries = new ArrayList<>();
+        getOverlapping(root, x1, y1, z1, x2, y2, z2, findFast, includeBorder, entries);
+        return entries;
+    }
+
+    private void getOverlapping(Node node, int x1, int y1, int z1, int x2, int y2, int z2, boolean findFast, boolean includeBorder, List<ParcelIndexEntry> entries) {
+        if (node == null || (findFast && !entries.isEmpty())) {
+            return;
+        }
+        // nothing in this subtree ends at or after the query start
+        if (includeBorder ? node.maxX < x1 : node.maxX <= x1) {
+            return;
+        }
+
+        getOverlapping(node.left, x1, y1, z1, x2, y2, z2, findFast, includeBorder, entries);
+
+        if (findFast && !entries.isEmpty()) {
+            return;
+        }
+        if (overlaps(node.entry, x1, y1, z1, x2, y2, z2, includeBorder)) {
+            entries.add(node.entry);
+        }
+
+        // everything in the right subtree starts at or after this node
+        if (includeBorder ? node.entry.getMinX() > x2 : node.entry.getMinX() >= x2) {
+            return;
+        }
+        getOverlapping(node.right, x1, y1, z1, x2, y2, z2, findFast, includeBorder, entries);
+    }
+
+    private static boolean overlaps(ParcelIndexEntry entry, int x1, int y1, int z1, int x2, int y2, int z2, boolean includeBorder) {
+        if (includeBorder) {
+            return entry.intersects(x1, y1, z1, x2, y2, z2);
+        }
+        return entry.getMinX() < x2 && entry.getMaxX() > x1
+                && entry.getMinY() < y2 && entry.getMaxY() > y1
+                && entry.getMinZ() < z2 && entry.getMaxZ() > z1;
+    }
+
+    /*
+     * AVL balancing
+     */
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static void update(Node node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        int maxX = node.entry.getMaxX();
+        if (node.left != null && node.left.maxX > maxX) {
+            maxX = node.left.maxX;
+        }
+        if (node.right != null && node.right.maxX > maxX) {
+            maxX = node.right.maxX;
+        }
+        node.maxX = maxX;
+    }
+
+    private static Node balance(Node node) {
+        update(node);
+        int balance = height(node.left) - height(node.right);
+        if (balance > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (balance < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+}
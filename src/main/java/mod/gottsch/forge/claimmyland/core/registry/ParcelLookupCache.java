@@ -0,0 +1,151 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.registry;
+
+import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * per-player cache of the last resolved (least significant) parcel.
+ * a lookup is valid while the registry version is unchanged and the position
+ * is within the cached box. the cached box is the parcel box if no smaller parcel overlaps it,
+ * otherwise the parcel box clipped to the chunk column it was resolved in if no smaller parcel
+ * overlaps that, so any position in the box resolves to the same parcel.
+ * the cache holds the most recently used lookups only, and a lookup is removed when its entity
+ * leaves the level, so it doesn't grow with the entities that have ever been checked.
+ */
+public class ParcelLookupCache {
+    private static final int MAX_LOOKUPS = 512;
+
+    // access ordered, so the least recently used lookup is evicted first
+    private final Map<UUID, Lookup> lookups = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Lookup> eldest) {
+            return size() > MAX_LOOKUPS;
+        }
+    };
+
+    /**
+     * mutable so that a player's lookup is reused rather than reallocated
+     */
+    private static class Lookup {
+        private int version;
+        private Parcel parcel;
+        private int minX;
+        private int minY;
+        private int minZ;
+        private int maxX;
+        private int maxY;
+        private int maxZ;
+
+        boolean contains(int x, int y, int z) {
+            return x >= minX && x <= maxX
+                    && y >= minY && y <= maxY
+                    && z >= minZ && z <= maxZ;
+        }
+    }
+
+    /**
+     *
+     * @return the cached parcel or null if the lookup missed.
+     */
+    public Parcel get(UUID entityId, int version, int x, int y, int z) {
+        Lookup lookup = lookups.get(entityId);
+        if (lookup != null && lookup.parcel != null && lookup.version == version && lookup.contains(x, y, z)) {
+            return lookup.parcel;
+        }
+        return null;
+    }
+
+    /**
+     * caches the resolved entry for the entity if it is safe to do so.
+     * @param entityId
+     * @param version the registry version the entry was resolved against
+     * @param entry the least significant entry at x, z
+     * @param overlapping the entries that overlap the entry's box
+     * @param x
+     * @param z
+     */
+    public void put(UUID entityId, int version, ParcelIndexEntry entry, List<ParcelIndexEntry> overlapping, int x, int z) {
+        int minX = entry.getMinX();
+        int minZ = entry.getMinZ();
+        int maxX = entry.getMaxX();
+        int maxZ = entry.getMaxZ();
+        if (isShadowed(entry, overlapping, minX, minZ, maxX, maxZ)) {
+            // a smaller parcel is elsewhere in the parcel, try the chunk column
+            int chunkMinX = (x >> 4) << 4;
+            int chunkMinZ = (z >> 4) << 4;
+            minX = Math.max(minX, chunkMinX);
+            minZ = Math.max(minZ, chunkMinZ);
+            maxX = Math.min(maxX, chunkMinX + 15);
+            maxZ = Math.min(maxZ, chunkMinZ + 15);
+            if (isShadowed(entry, overlapping, minX, minZ, maxX, maxZ)) {
+                Lookup lookup = lookups.get(entityId);
+                if (lookup != null) {
+                    lookup.parcel = null;
+                }
+                return;
+            }
+        }
+
+        Lookup lookup = lookups.get(entityId);
+        if (lookup == null) {
+            lookup = new Lookup();
+            lookups.put(entityId, lookup);
+        }
+        lookup.version = version;
+        lookup.parcel = entry.getParcel();
+        lookup.minX = minX;
+        lookup.minY = entry.getMinY();
+        lookup.minZ = minZ;
+        lookup.maxX = maxX;
+        lookup.maxY = entry.getMaxY();
+        lookup.maxZ = maxZ;
+    }
+
+    /**
+     * a smaller (or equal) parcel overlapping the box would resolve instead
+     */
+    private static boolean isShadowed(ParcelIndexEntry entry, List<ParcelIndexEntry> overlapping, int minX, int minZ, int maxX, int maxZ) {
+        for (ParcelIndexEntry other : overlapping) {
+            if (other.getParcel() != entry.getParcel() && other.getArea() <= entry.getArea()
+                    && other.intersects(minX, entry.getMinY(), minZ, maxX, entry.getMaxY(), maxZ)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void remove(UUID entityId) {
+        lookups.remove(entityId);
+    }
+
+    public void clear() {
+        lookups.clear();
+    }
+
+    public int size() {
+        return lookups.size();
+    }
+}
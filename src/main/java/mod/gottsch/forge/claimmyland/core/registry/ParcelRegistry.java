@@ -24,16 +24,25 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
 import com.google.gson.Gson;
 import com.mojang.authlib.minecraft.client.ObjectMapper;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import mod.gottsch.forge.claimmyland.ClaimMyLand;
 import mod.gottsch.forge.claimmyland.core.block.entity.FoundationStoneBlockEntity;
-import mod.gottsch.forge.claimmyland.core.config.Config;
+import mod.gottsch.forge.claimmyland.core.config.ConfigSnapshot;
 import mod.gottsch.forge.claimmyland.core.parcel.*;
+import mod.gottsch.forge.claimmyland.core.persistence.ParcelCodec;
+import mod.gottsch.forge.claimmyland.core.persistence.ParcelIndexStorage;
+import mod.gottsch.forge.claimmyland.core.persistence.ParcelJournal;
+import mod.gottsch.forge.claimmyland.core.persistence.ParcelMigrator;
+import mod.gottsch.forge.claimmyland.core.persistence.ParcelShardStorage;
 import mod.gottsch.forge.claimmyland.core.util.ModUtil;
-import mod.gottsch.forge.gottschcore.bst.CoordsInterval;
-import mod.gottsch.forge.gottschcore.bst.CoordsIntervalTree;
-import mod.gottsch.forge.gottschcore.bst.IInterval;
 import mod.gottsch.forge.gottschcore.spatial.Box;
+import mod.gottsch.forge.gottschcore.spatial.Coords;
 import mod.gottsch.forge.gottschcore.spatial.ICoords;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.Tag;
@@ -44,6 +53,7 @@ import org.apache.commons.lang3.ObjectUtils;
 
 import java.util.*;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  *
@@ -54,27 +64,60 @@ public class ParcelRegistry {
     private static final String PARCELS_KEY = "parcels";
 
     /*
-     * interval binary spanning tree. main data structure for searchable areas in 3 dimensions.
-     * note - this bst does not contain parcels but only area (min coords -> max coords) of the parcel and the id of the owner.
+     * balanced interval tree. main data structure for searchable areas in 3 dimensions.
+     * note - the entries hold the area (min coords -> max coords) of the parcel and the parcel itself,
+     * so results do not have to be resolved through the coords map.
      */
-    private static final CoordsIntervalTree<UUID> TREE = new CoordsIntervalTree<UUID>();
+    private static final ParcelIntervalTree TREE = new ParcelIntervalTree();
     /*
      * supporting data structure for buffered parcels ie areas with a "buffer" zone around them.
      */
-    private static final CoordsIntervalTree<UUID> BUFFER_TREE = new CoordsIntervalTree<UUID>();
+    private static final ParcelIntervalTree BUFFER_TREE = new ParcelIntervalTree();
     /*
      * map of parcels by owner id. convenience map
      */
     private static final Map<UUID, List<Parcel>> PARCELS_BY_OWNER = new HashMap<>();
     /*
-     * map of parcels by coords. main storage of parcels.
-     * note - the min coords are used as the key.
+     * map of parcels by parcel id. main storage of parcels.
+     * all the other maps and indexes are derived from this map.
      */
-    private static final Map<ICoords, Parcel> PARCELS_BY_COORDS = new HashMap<>();
+    private static final Map<UUID, Parcel> PARCELS_BY_ID = new HashMap<>();
+
+    /*
+     * spatial hash of parcels by chunk column. used for point lookups ie protection checks.
+     */
+    private static final ParcelChunkIndex CHUNK_INDEX = new ParcelChunkIndex();
+    /*
+     * spatial hash of buffered parcels by chunk column.
+     */
+    private static final ParcelChunkIndex BUFFER_CHUNK_INDEX = new ParcelChunkIndex();
+
+    /*
+     * containment tree of parcels (nation -> zone -> citizen). used to resolve the least significant parcel.
+     */
+    private static final ParcelHierarchy HIERARCHY = new ParcelHierarchy();
+
+    /*
+     * per-player cache of the last resolved parcel. invalidated by the registry version.
+     */
+    private static final ParcelLookupCache LOOKUP_CACHE = new ParcelLookupCache();
+
+    /*
+     * incremented on every structural change to the registry ie. add, remove, owner changes.
+     */
+    private static int version;
+
     /*
-     * supporting map of buffered parcels.
+     * parcels by storage shard (512x512 region of the parcel coords), and the shards that have changed
+     * since the last save. only the dirty shards are persisted.
      */
-    private static final Map<ICoords, Parcel> BUFFER_PARCELS_BY_COORDS = new HashMap<>();
+    private static final Long2ObjectOpenHashMap<List<Parcel>> PARCELS_BY_SHARD = new Long2ObjectOpenHashMap<>();
+    private static final LongOpenHashSet DIRTY_SHARDS = new LongOpenHashSet();
+
+    /*
+     * the journal that registry mutations are appended to. null while loading/replaying.
+     */
+    private static ParcelJournal journal;
 
     /*
      * nation caches
@@ -117,12 +160,22 @@ public class ParcelRegistry {
      *
      */
     public static synchronized void clear() {
+        if (journal != null) {
+            journal.clear();
+        }
+        // any existing shards are now empty
+        DIRTY_SHARDS.addAll(PARCELS_BY_SHARD.keySet());
+        PARCELS_BY_SHARD.clear();
         PARCELS_BY_OWNER.clear();
-        PARCELS_BY_COORDS.clear();
-        BUFFER_PARCELS_BY_COORDS.clear();
+        PARCELS_BY_ID.clear();
         TREE.clear();
         BUFFER_TREE.clear();
+        CHUNK_INDEX.clear();
+        BUFFER_CHUNK_INDEX.clear();
+        HIERARCHY.clear();
         NATIONS_BY_ID.clear();
+        LOOKUP_CACHE.clear();
+        version++;
     }
 
     /**
@@ -132,9 +185,12 @@ public class ParcelRegistry {
      */
     public static synchronized CompoundTag save(CompoundTag tag) {
 //        ClaimMyLand.LOGGER.debug("saving parcel registry...");
+        return save(tag, PARCELS_BY_ID.values());
+    }
 
+    private static CompoundTag save(CompoundTag tag, Collection<Parcel> parcels) {
         ListTag list = new ListTag();
-        PARCELS_BY_COORDS.forEach((coords, parcel) -> {
+        parcels.forEach(parcel -> {
 //            if (ClaimMyLand.LOGGER.isDebugEnabled()) {
 //                ClaimMyLand.LOGGER.debug("registry saving parcel -> {}", parcel);
 //            }
@@ -148,61 +204,258 @@ public class ParcelRegistry {
         return tag;
     }
 
+    /**
+     * snapshots the parcels of the shards that have changed since the last save, and resets the dirty state.
+     * the snapshots are immutable, so they can be encoded off the server thread.
+     * a shard without parcels is mapped to null ie. it is to be deleted.
+     * @return the parcel snapshots by shard key
+     */
+    public static synchronized Long2ObjectMap<List<ParcelCodec.Snapshot>> snapshotDirtyShards() {
+        Long2ObjectMap<List<ParcelCodec.Snapshot>> shards = new Long2ObjectOpenHashMap<>(DIRTY_SHARDS.size());
+        for (long key : DIRTY_SHARDS.toLongArray()) {
+            List<Parcel> parcels = PARCELS_BY_SHARD.get(key);
+            shards.put(key, parcels == null || parcels.isEmpty() ? null
+                    : parcels.stream().map(ParcelCodec.Snapshot::of).toList());
+            DIRTY_SHARDS.remove(key);
+        }
+        return shards;
+    }
+
+    /**
+     * marks the parcel's shard as changed. must be called after a parcel is modified
+     * outside of the registry ie. whitelist, name, border type.
+     * @param parcel
+     */
+    public static synchronized void markDirty(Parcel parcel) {
+        DIRTY_SHARDS.add(ParcelShardStorage.getShardKey(parcel.getCoords()));
+        if (journal != null) {
+            journal.upsert(parcel);
+        }
+    }
+
+    /**
+     * re-marks shards as changed ie. when writing them failed.
+     * @param keys
+     */
+    public static synchronized void markDirty(LongCollection keys) {
+        DIRTY_SHARDS.addAll(keys);
+    }
+
+    /**
+     * marks all shards as changed ie. when migrating from the monolithic format.
+     */
+    public static synchronized void markAllDirty() {
+        DIRTY_SHARDS.addAll(PARCELS_BY_SHARD.keySet());
+    }
+
+    public static synchronized boolean isDirty() {
+        return !DIRTY_SHARDS.isEmpty();
+    }
+
+    private static void addToShard(Parcel parcel) {
+        long key = ParcelShardStorage.getShardKey(parcel.getCoords());
+        PARCELS_BY_SHARD.computeIfAbsent(key, k -> new ArrayList<>()).add(parcel);
+        DIRTY_SHARDS.add(key);
+    }
+
+    private static void removeFromShard(Parcel parcel) {
+        long key = ParcelShardStorage.getShardKey(parcel.getCoords());
+        List<Parcel> parcels = PARCELS_BY_SHARD.get(key);
+        if (parcels != null) {
+            parcels.removeIf(p -> p.getId().equals(parcel.getId()));
+            if (parcels.isEmpty()) {
+                PARCELS_BY_SHARD.remove(key);
+            }
+        }
+        DIRTY_SHARDS.add(key);
+    }
+
+    public static synchronized void setJournal(ParcelJournal journal) {
+        ParcelRegistry.journal = journal;
+    }
+
+    public static synchronized ParcelJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * replays the journal on top of the loaded registry. the records hold the resulting state
+     * of each change, so any cascading changes (ie. removing a nation's zones) are records of their own
+     * and are not re-applied here.
+     * @param journal
+     * @return the number of records replayed
+     */
+    public static synchronized int replay(ParcelJournal journal) {
+        return journal.replay(new ParcelJournal.Handler() {
+            @Override
+            public void upsert(Parcel parcel) {
+                // the current parcel is replaced
+                Optional.ofNullable(PARCELS_BY_ID.get(parcel.getId())).ifPresent(ParcelRegistry::removeInternal);
+                add(parcel);
+            }
+
+            @Override
+            public void remove(UUID parcelId) {
+                Optional.ofNullable(PARCELS_BY_ID.get(parcelId)).ifPresent(ParcelRegistry::removeInternal);
+            }
+
+            @Override
+            public void clear() {
+                ParcelRegistry.clear();
+            }
+        });
+    }
+
     /**
      *
      * @param tag
+     * @param version the schema version of the tag
      */
-    public static synchronized void load(CompoundTag tag) {
-        ClaimMyLand.LOGGER.debug("loading registry...");
+    public static synchronized void load(CompoundTag tag, int version) {
+        loadParcels(createParcels(tag, version));
+    }
+
+    /**
+     * creates the parcels of a registry tag, migrated from the schema version of the tag
+     * @param tag
+     * @param version
+     * @return
+     */
+    public static List<Parcel> createParcels(CompoundTag tag, int version) {
+        if (!tag.contains(PARCELS_KEY)) {
+            return new ArrayList<>();
+        }
+        return ParcelMigrator.migrate(tag.getList(PARCELS_KEY, Tag.TAG_COMPOUND), version);
+    }
+
+    /**
+     * loads the registry from the parcels ie. of all the shards.
+     * @param parcels
+     */
+    public static synchronized void loadParcels(Collection<Parcel> parcels) {
+        loadParcels(parcels, null);
+    }
+
+    /**
+     * loads the registry from the parcels ie. of all the shards.
+     * the tree entries are restored from the persisted index if given, otherwise they are created in parallel.
+     * all the maps and indexes are then built in one pass.
+     * @param parcels
+     * @param index the persisted index of the parcels, nullable
+     */
+    public static synchronized void loadParcels(Collection<Parcel> parcels, ParcelIndexStorage.Index index) {
+        ClaimMyLand.LOGGER.debug("loading registry, size -> {}", parcels.size());
         clear();
 
+        Parcel[] array = parcels.toArray(new Parcel[0]);
+        for (Parcel parcel : array) {
+            // add to byId map
+            PARCELS_BY_ID.put(parcel.getId(), parcel);
+            long key = ParcelShardStorage.getShardKey(parcel.getCoords());
+            PARCELS_BY_SHARD.computeIfAbsent(key, k -> new ArrayList<>()).add(parcel);
 
-        if (tag.contains(PARCELS_KEY)) {
-            ListTag list = tag.getList(PARCELS_KEY, Tag.TAG_COMPOUND);
-//            ClaimMyLand.LOGGER.debug("loading registry, size -> {}", list.size());
+            // add to byOwner map
+            if (ObjectUtils.isNotEmpty(parcel.getOwnerId())) {
+                PARCELS_BY_OWNER.computeIfAbsent(parcel.getOwnerId(), k -> new ArrayList<>()).add(parcel);
+            }
 
-            list.forEach(element -> {
-                ClaimMyLand.LOGGER.debug("processing parcel element...");
-                Optional<Parcel> optionalParcel = ParcelFactory.create((CompoundTag)element);
-                optionalParcel.ifPresent(parcel -> {
-                    // load the parcel
-                    parcel.load((CompoundTag) element);
+            // if nation add to special map
+            if (parcel.getType() == ParcelType.NATION) {
+                NATIONS_BY_ID.put(parcel.getNationId(), parcel);
+            }
+        }
 
-                    if (ClaimMyLand.LOGGER.isDebugEnabled()) {
-                        ClaimMyLand.LOGGER.debug("loaded parcel -> {}", parcel);
-                    }
+        // the entries, in tree order
+        ParcelIndexEntry[] entries = index == null ? null : restoreEntries(index.getTree(), array.length);
+        ParcelIndexEntry[] bufferEntries = index == null ? null : restoreEntries(index.getBuffer(), array.length);
+        if (entries == null || bufferEntries == null) {
+            // the entries are independent of each other (and of the registry state)
+            entries = new ParcelIndexEntry[array.length];
+            bufferEntries = new ParcelIndexEntry[array.length];
+            Arrays.parallelSetAll(entries, i -> new ParcelIndexEntry(array[i], array[i].getBox()));
+            Arrays.parallelSetAll(bufferEntries, i -> createBufferEntry(array[i]));
+            Arrays.parallelSort(entries, ParcelIntervalTree.ORDER);
+            Arrays.parallelSort(bufferEntries, ParcelIntervalTree.ORDER);
+        } else {
+            ClaimMyLand.LOGGER.debug("restored parcel indexes from the index cache");
+        }
 
-                    // add to byCoords map
-                    PARCELS_BY_COORDS.put(parcel.getMinCoords(), parcel);
-
-                    // add to byOwner map
-                    if (ObjectUtils.isNotEmpty(parcel.getOwnerId())) {
-                        List<Parcel> parcelsByOwner = new ArrayList<>();
-                        if (!PARCELS_BY_OWNER.containsKey(parcel.getOwnerId())) {
-                            // create new list entry
-                            PARCELS_BY_OWNER.put(parcel.getOwnerId(), parcelsByOwner);
-                        } else {
-                            parcelsByOwner = PARCELS_BY_OWNER.get(parcel.getOwnerId());
-                        }
-                        parcelsByOwner.add(parcel);
-                    }
+        for (int i = 0; i < entries.length; i++) {
+            CHUNK_INDEX.add(entries[i]);
+            BUFFER_CHUNK_INDEX.add(bufferEntries[i]);
+        }
+        TREE.build(entries);
+        BUFFER_TREE.build(bufferEntries);
+        HIERARCHY.build(Arrays.asList(entries));
+        // the loaded state is the persisted state
+        DIRTY_SHARDS.clear();
+    }
 
-                    // add to tree
-                    Box box = new Box(parcel.getMinCoords(), parcel.getMaxCoords());
-                    TREE.insert(new CoordsInterval<>(box.getMinCoords(), box.getMaxCoords(), parcel.getOwnerId()));
+    /**
+     * restores the entries of a persisted tree
+     * @param section
+     * @param size the number of loaded parcels
+     * @return null if the section does not match the loaded parcels
+     */
+    private static ParcelIndexEntry[] restoreEntries(ParcelIndexStorage.Section section, int size) {
+        if (section.size() != size) {
+            return null;
+        }
+        ParcelIndexEntry[] entries = new ParcelIndexEntry[size];
+        for (int i = 0; i < size; i++) {
+            Parcel parcel = PARCELS_BY_ID.get(new UUID(section.getMostSignificantBits(i), section.getLeastSignificantBits(i)));
+            if (parcel == null) {
+                return null;
+            }
+            entries[i] = new ParcelIndexEntry(parcel, section.getBound(i, 0), section.getBound(i, 1), section.getBound(i, 2),
+                    section.getBound(i, 3), section.getBound(i, 4), section.getBound(i, 5));
+        }
+        return entries;
+    }
 
-                    // add to the buffer tree
-                    addParcelToBufferTree(parcel);
+    /**
+     * the keys of the shards that have parcels
+     * @return
+     */
+    public static synchronized long[] getShardKeys() {
+        return PARCELS_BY_SHARD.keySet().toLongArray();
+    }
 
-                    // if nation add to special map
-                    if (parcel.getType() == ParcelType.NATION) {
-                        NATIONS_BY_ID.put(((NationParcel)parcel).getNationId(), parcel);
-                    }
-                });
-            });
+    /**
+     * replaces all the parcels with the restored parcels. the indexes are bulk built, and all the current
+     * and restored shards are marked as changed.
+     * the restored state is journaled as a whole, so it is recovered if the server stops before the shards are written.
+     * @param parcels
+     */
+    public static synchronized void restore(Collection<Parcel> parcels) {
+        LongOpenHashSet previous = new LongOpenHashSet(PARCELS_BY_SHARD.keySet());
+        // the bulk load is not journaled record by record
+        ParcelJournal active = journal;
+        journal = null;
+        try {
+            loadParcels(parcels);
+        } finally {
+            journal = active;
+        }
+        // the restored parcels replace all the persisted shards
+        DIRTY_SHARDS.addAll(previous);
+        markAllDirty();
+        if (journal != null) {
+            journal.reset(parcels);
         }
     }
 
+    /**
+     * lists the entries of the built trees for the persisted index. the entries are immutable,
+     * so the returned supplier can encode them off the server thread.
+     * @return
+     */
+    public static synchronized Supplier<byte[]> snapshotIndex() {
+        List<ParcelIndexEntry> tree = TREE.list();
+        List<ParcelIndexEntry> buffer = BUFFER_TREE.list();
+        return () -> ParcelIndexStorage.encode(tree, buffer);
+    }
+
     /**
      * inflates the parcel and adds to the buffer tree, which is a duplicate of the main tree,
      * but uses the inflated coords. the buffer tree is used when determining if 2 parcels
@@ -211,6 +464,28 @@ public class ParcelRegistry {
      * @param parcel
      */
     public static synchronized void addParcelToBufferTree(Parcel parcel) {
+        ParcelIndexEntry entry = createBufferEntry(parcel);
+        BUFFER_TREE.insert(entry);
+        BUFFER_CHUNK_INDEX.add(entry);
+    }
+
+    /**
+     * rebuilds the buffer tree and buffer chunk index from the parcels,
+     * ie. when the buffer radius config has changed.
+     */
+    public static synchronized void rebuildBufferIndexes() {
+        ClaimMyLand.LOGGER.debug("rebuilding parcel buffer indexes...");
+        BUFFER_CHUNK_INDEX.clear();
+        List<ParcelIndexEntry> bufferEntries = new ArrayList<>(PARCELS_BY_ID.size());
+        PARCELS_BY_ID.values().forEach(parcel -> {
+            ParcelIndexEntry bufferEntry = createBufferEntry(parcel);
+            bufferEntries.add(bufferEntry);
+            BUFFER_CHUNK_INDEX.add(bufferEntry);
+        });
+        BUFFER_TREE.build(bufferEntries);
+    }
+
+    private static ParcelIndexEntry createBufferEntry(Parcel parcel) {
         Box inflatedBox;
         // inflate if buffer size is > 0
         if (parcel.getBufferSize() > 0) {
@@ -218,17 +493,30 @@ public class ParcelRegistry {
         } else {
             inflatedBox = parcel.getBox();
         }
+        return new ParcelIndexEntry(parcel, inflatedBox);
+    }
 
-        BUFFER_TREE.insert(new CoordsInterval<>(inflatedBox.getMinCoords(), inflatedBox.getMaxCoords(), parcel.getOwnerId()));
-        // add buffered parcel to byCoords map
-        BUFFER_PARCELS_BY_COORDS.put(inflatedBox.getMinCoords(), parcel);
-
+    /**
+     * removes the parcel from the trees, chunk indexes and hierarchy.
+     * the indexed entries are used for removal so the bounds do not have to be recomputed.
+     * @param parcel
+     */
+    private static void removeFromIndexes(Parcel parcel) {
+        HIERARCHY.remove(parcel.getId());
+        ParcelIndexEntry entry = CHUNK_INDEX.remove(parcel.getId());
+        if (entry != null) {
+            TREE.delete(entry);
+        }
+        ParcelIndexEntry bufferEntry = BUFFER_CHUNK_INDEX.remove(parcel.getId());
+        if (bufferEntry != null) {
+            BUFFER_TREE.delete(bufferEntry);
+        }
     }
 
     public static String toJson() {
         Gson gson = new Gson();
         ObjectMapper mapper = new ObjectMapper(gson);
-        return mapper.writeValueAsString(PARCELS_BY_COORDS);
+        return mapper.writeValueAsString(PARCELS_BY_ID);
     }
 
     // TODO
@@ -255,24 +543,28 @@ public class ParcelRegistry {
         parcels = PARCELS_BY_OWNER.get(parcel.getOwnerId());
         parcels.add(parcel);
 
-        // add to parcels by coords
-        PARCELS_BY_COORDS.put(parcel.getMinCoords(), parcel);
+        // add to parcels by id
+        PARCELS_BY_ID.put(parcel.getId(), parcel);
+        addToShard(parcel);
+        if (journal != null) {
+            journal.upsert(parcel);
+        }
 
         // add to BST
-        Box box = new Box(parcel.getMinCoords(), parcel.getMaxCoords());
-        IInterval<UUID> interval = TREE.insert(new CoordsInterval<UUID>(parcel.getMinCoords(), parcel.getMaxCoords(), parcel.getOwnerId()));
+        ParcelIndexEntry entry = new ParcelIndexEntry(parcel, parcel.getBox());
+        TREE.insert(entry);
+        CHUNK_INDEX.add(entry);
+        HIERARCHY.add(entry);
 
         // add to the buffer tree
-//        Box inflatedBox = inflateParcelBox(parcel);
-//        BUFFER_TREE.insert(new CoordsInterval<>(inflatedBox.getMinCoords(), inflatedBox.getMaxCoords(), parcel.getOwnerId()));
-//        BUFFER_PARCELS_BY_COORDS.put(inflatedBox.getMinCoords(), parcel);
-           addParcelToBufferTree(parcel);
+        addParcelToBufferTree(parcel);
 
         if (parcel.getType() == ParcelType.NATION) {
             NATIONS_BY_ID.put(((NationParcel)parcel).getNationId(), parcel);
         }
+        version++;
 
-        return interval != null ? Optional.of(parcel) : Optional.empty();
+        return Optional.of(parcel);
     }
 
     /**
@@ -280,30 +572,37 @@ public class ParcelRegistry {
      * @param parcel
      */
     public static void removeParcel(Parcel parcel) {
-        // remove from the TREE
-        TREE.delete(new CoordsInterval<>(new CoordsInterval<UUID>(parcel.getMinCoords(), parcel.getMaxCoords(), parcel.getOwnerId())));
-        // delete from PARCELS registries
-        List<Parcel> parcels = PARCELS_BY_OWNER.get(parcel.getOwnerId());
-        if (!parcels.isEmpty()) {
-            parcels.removeIf(p -> p.getId().equals(parcel.getId()));
+        removeInternal(parcel);
+        if (journal != null) {
+            journal.remove(parcel.getId());
         }
-        PARCELS_BY_COORDS.remove(parcel.getMinCoords());
-
-        // remove from buffer map
-        Box inflatedBox = inflateParcelBox(parcel);
-        BUFFER_PARCELS_BY_COORDS.remove(inflatedBox.getMinCoords());
-        // TODO test if this only deletes the one, or everything in this area.
-        // remove from buffer tree
-        BUFFER_TREE.delete(new CoordsInterval<>(new CoordsInterval<UUID>(inflatedBox.getMinCoords(), inflatedBox.getMaxCoords(), parcel.getOwnerId())));
 
         // if nation remove from special map/registry
         removeFromNationsRegistry(parcel);
     }
 
-    private static void removeFromNationsRegistry(Parcel parcel) {
+    /**
+     * removes the parcel from all the maps and indexes, without any cascading to child parcels.
+     * @param parcel
+     */
+    private static void removeInternal(Parcel parcel) {
+        version++;
+        // remove from the trees and chunk indexes
+        removeFromIndexes(parcel);
+        // delete from PARCELS registries
+        List<Parcel> parcels = PARCELS_BY_OWNER.get(parcel.getOwnerId());
+        if (parcels != null && !parcels.isEmpty()) {
+            parcels.removeIf(p -> p.getId().equals(parcel.getId()));
+        }
+        PARCELS_BY_ID.remove(parcel.getId());
+        removeFromShard(parcel);
         if (parcel.getType() == ParcelType.NATION) {
             NATIONS_BY_ID.remove(((NationParcel)parcel).getNationId(), parcel);
+        }
+    }
 
+    private static void removeFromNationsRegistry(Parcel parcel) {
+        if (parcel.getType() == ParcelType.NATION) {
                 ParcelRegistry.findChildrenByNationId(parcel.getNationId())
                 .forEach(p -> {
                     // TODO calling this may cause Concurrent operation exceptions.
@@ -312,6 +611,7 @@ public class ParcelRegistry {
                     } else {
                         p.setType(ParcelType.PLAYER);
                         p.setNationId(null);
+                        markDirty(p);
                         // TODO remove borders if any this would have to be able to call the Border Entity Block - how?!
                     }
                 });
@@ -324,7 +624,6 @@ public class ParcelRegistry {
      * @param ownerId
      */
     public static void removeParcel(Level level, UUID ownerId) {
-
         // get all parcels excluding zones as they will be handled when handling nations
         List<Parcel> parcels = Optional.ofNullable(PARCELS_BY_OWNER.get(ownerId))
                 .orElseGet(Collections::emptyList)
@@ -342,10 +641,10 @@ public class ParcelRegistry {
                 // remove nations parcels (and zones)
                 removeFromNationsRegistry(p);
 
-                PARCELS_BY_COORDS.remove(p.getMinCoords());
-                // remove from buffer map
-                Box inflatedBox = inflateParcelBox(p);
-                BUFFER_PARCELS_BY_COORDS.remove(inflatedBox.getMinCoords());
+                removeInternal(p);
+                if (journal != null) {
+                    journal.remove(p.getId());
+                }
             }
         }
         PARCELS_BY_OWNER.remove(ownerId);
@@ -360,6 +659,8 @@ public class ParcelRegistry {
                     parcels.removeIf(p -> p.getId().equals(abandonedParcel.get().getId()));
                 }
                 abandonedParcel.get().setOwnerId(null);
+                markDirty(abandonedParcel.get());
+                version++;
                 return true;
             }
         }
@@ -373,8 +674,8 @@ public class ParcelRegistry {
      */
     public static Box inflateParcelBox(final Parcel parcel) {
         return switch(parcel.getType()) {
-            case PLAYER, CITIZEN -> ModUtil.inflate(parcel.getBox(), Config.SERVER.general.parcelBufferRadius.get());
-            case NATION -> ModUtil.inflate(parcel.getBox(), Config.SERVER.general.nationParcelBufferRadius.get());
+            case PLAYER, CITIZEN -> ModUtil.inflate(parcel.getBox(), ConfigSnapshot.get().parcelBufferRadius);
+            case NATION -> ModUtil.inflate(parcel.getBox(), ConfigSnapshot.get().nationParcelBufferRadius);
             case ZONE -> parcel.getBox();
           };
     }
@@ -398,14 +699,7 @@ public class ParcelRegistry {
      * @return
      */
     public static Optional<Parcel> findByParcelId(UUID id) {
-        List<Parcel> parcels = new ArrayList<>(1);
-        for (Parcel parcel : PARCELS_BY_COORDS.values()) {
-            if (parcel.getId().equals(id)) {
-                parcels.add(parcel);
-                break;
-            }
-        }
-        return parcels.isEmpty() ? Optional.empty() : Optional.of(parcels.get(0));
+        return id == null ? Optional.empty() : Optional.ofNullable(PARCELS_BY_ID.get(id));
     }
 
     /**
@@ -413,7 +707,7 @@ public class ParcelRegistry {
      */
     public static List<Parcel> findByParcel(Predicate<Parcel> predicate) {
         List<Parcel> parcels = new ArrayList<>();
-        PARCELS_BY_COORDS.values().forEach(parcel -> {
+        PARCELS_BY_ID.values().forEach(parcel -> {
             if (predicate.test(parcel)) {
                 parcels.add(parcel);
             }
@@ -428,7 +722,7 @@ public class ParcelRegistry {
      */
     public static List<Parcel> findByNationId(UUID nationId) {
         List<Parcel> parcels = new ArrayList<>(1);
-        for (Parcel parcel : PARCELS_BY_COORDS.values()) {
+        for (Parcel parcel : PARCELS_BY_ID.values()) {
             if ((parcel instanceof NationParcel) && ((NationParcel) parcel).getNationId().equals(nationId)) {
                 parcels.add(parcel);
                 break;
@@ -438,14 +732,14 @@ public class ParcelRegistry {
     }
 
     public static List<Parcel> findByNationName(String nationName) {
-        return PARCELS_BY_COORDS.values().stream()
+        return PARCELS_BY_ID.values().stream()
                 .filter(p -> (p instanceof NationParcel))
                 .filter(p -> (nationName.equals((p.getName()))))
                 .toList();
     }
 
     public static List<Parcel> findChildrenByNationId(UUID nationId) {
-        return PARCELS_BY_COORDS.values().stream()
+        return PARCELS_BY_ID.values().stream()
                 .filter(p -> ((p instanceof CitizenParcel || p instanceof ZoneParcel)) && nationId.equals(p.getNationId()))
                 .toList();
     }
@@ -464,18 +758,19 @@ public class ParcelRegistry {
      * @return
      */
     public static List<Parcel> findAbandoned() {
-        return PARCELS_BY_COORDS.values().stream()
+        return PARCELS_BY_ID.values().stream()
                 .filter(p -> (p.getOwnerId() == null))
                 .toList();
     }
 
     /**
      * find()/findBuffer() variants are slower versions of findRaw() since it requires looking up the parcel from the internal map.
+     * the single coords variants are point lookups and are resolved by the chunk index instead of the tree.
      * @param coords
      * @return
      */
     public static List<Parcel> find(ICoords coords) {
-        return find(coords, coords);
+        return CHUNK_INDEX.find(coords.getX(), coords.getY(), coords.getZ());
     }
 
     public static List<Parcel> find(Box box) {
@@ -491,12 +786,11 @@ public class ParcelRegistry {
     }
 
     public static List<Parcel> find(ICoords coords1, ICoords coords2, boolean findFast, boolean includeBorder) {
-        List<IInterval<UUID>> intervals = findRaw(coords1, coords2, findFast, includeBorder);
-        return getAsParcels(intervals);
+        return getAsParcels(findRaw(coords1, coords2, findFast, includeBorder));
     }
 
     public static List<Parcel> findBuffer(ICoords coords) {
-        return findBuffer(coords, coords);
+        return BUFFER_CHUNK_INDEX.find(coords.getX(), coords.getY(), coords.getZ());
     }
 
     public static List<Parcel> findBuffer(Box box) {
@@ -512,41 +806,17 @@ public class ParcelRegistry {
     }
 
     public static List<Parcel> findBuffer(ICoords coords1, ICoords coords2, boolean findFast, boolean includeBorder) {
-        List<IInterval<UUID>> intervals = findBufferRaw(coords1, coords2, findFast, includeBorder);
-        return getBufferParcels(intervals);
-    }
-
-    /**
-     * returns a parcel list from the given interval list
-     * @param intervals
-     * @return
-     */
-    private static List<Parcel> getAsParcels(List<IInterval<UUID>> intervals) {
-        List<Parcel> parcels = new ArrayList<>();
-        intervals.forEach(i -> {
-            // find the parcel from the map
-            Parcel p = PARCELS_BY_COORDS.get(((CoordsInterval<UUID>)i).getCoords1());
-            if (p != null) {
-                parcels.add(p);
-            }
-        });
-        return parcels;
+        return getAsParcels(findBufferRaw(coords1, coords2, findFast, includeBorder));
     }
 
     /**
-     * returns a buffer parcel list from the given interval list
-     * @param intervals
+     * returns a parcel list from the given entry list
+     * @param entries
      * @return
      */
-    public static List<Parcel> getBufferParcels(List<IInterval<UUID>> intervals) {
-        List<Parcel> parcels = new ArrayList<>();
-        intervals.forEach(i -> {
-            // find the parcel from the map
-            Parcel p = BUFFER_PARCELS_BY_COORDS.get(((CoordsInterval<UUID>)i).getCoords1());
-            if (p != null) {
-                parcels.add(p);
-            }
-        });
+    private static List<Parcel> getAsParcels(List<ParcelIndexEntry> entries) {
+        List<Parcel> parcels = new ArrayList<>(entries.size());
+        entries.forEach(e -> parcels.add(e.getParcel()));
         return parcels;
     }
 
@@ -575,18 +845,9 @@ public class ParcelRegistry {
      * @return
      */
     public static List<Box> findBoxes(ICoords coords1, ICoords coords2, boolean findFast, boolean includeBorder) {
-        List<IInterval<UUID>> intervals = findRaw(coords1, coords2, findFast, includeBorder);
-        List<Box> boxes = new ArrayList<>();
-
-        // need to check against the PARCELS_BY_COORDS map to ensure it hasn't been deleted.
-        intervals.forEach(i -> {
-            // find the parcel from the map
-            Parcel p = PARCELS_BY_COORDS.get(((CoordsInterval<UUID>)i).getCoords1());
-            if (p != null) {
-                boxes.add(new Box(((CoordsInterval<UUID>)i).getCoords1(), ((CoordsInterval<UUID>)i).getCoords2()));
-            }
-        });
-
+        List<ParcelIndexEntry> entries = findRaw(coords1, coords2, findFast, includeBorder);
+        List<Box> boxes = new ArrayList<>(entries.size());
+        entries.forEach(e -> boxes.add(new Box(Coords.of(e.getMinX(), e.getMinY(), e.getMinZ()), Coords.of(e.getMaxX(), e.getMaxY(), e.getMaxZ()))));
         return boxes;
     }
 
@@ -599,16 +860,118 @@ public class ParcelRegistry {
      * @param includeBorder
      * @return
      */
-    private static List<IInterval<UUID>> findRaw(ICoords coords1, ICoords coords2, boolean findFast, boolean includeBorder) {
-        return TREE.getOverlapping(TREE.getRoot(), new CoordsInterval<UUID>(coords1, coords2), findFast, includeBorder);
+    private static List<ParcelIndexEntry> findRaw(ICoords coords1, ICoords coords2, boolean findFast, boolean includeBorder) {
+        return TREE.getOverlapping(coords1.getX(), coords1.getY(), coords1.getZ(),
+                coords2.getX(), coords2.getY(), coords2.getZ(), findFast, includeBorder);
     }
 
-    private static List<IInterval<UUID>> findBufferRaw(ICoords coords1, ICoords coords2, boolean findFast, boolean includeBorder) {
-        return BUFFER_TREE.getOverlapping(BUFFER_TREE.getRoot(), new CoordsInterval<UUID>(coords1, coords2), findFast, includeBorder);
+    private static List<ParcelIndexEntry> findBufferRaw(ICoords coords1, ICoords coords2, boolean findFast, boolean includeBorder) {
+        return BUFFER_TREE.getOverlapping(coords1.getX(), coords1.getY(), coords1.getZ(),
+                coords2.getX(), coords2.getY(), coords2.getZ(), findFast, includeBorder);
     }
 
     public static boolean intersectsParcel(ICoords coords) {
-        return intersectsParcel(coords, coords);
+        return intersectsParcel(coords.getX(), coords.getY(), coords.getZ());
+    }
+
+    /**
+     * allocation-free variant of intersectsParcel(coords) for use by the event handlers.
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    public static boolean intersectsParcel(int x, int y, int z) {
+        return CHUNK_INDEX.intersects(x, y, z);
+    }
+
+    /**
+     * bulk variant of intersectsParcel() for a list of positions ie. the affected blocks of an explosion.
+     * the candidate parcels are fetched once for the bounding box of all the positions,
+     * and then each position is tested against that (small) set.
+     * @param positions
+     * @return a bitset where bit i is set if positions[i] intersects a parcel
+     */
+    public static BitSet intersectsParcels(List<BlockPos> positions) {
+        BitSet result = new BitSet(positions.size());
+        if (positions.isEmpty()) {
+            return result;
+        }
+
+        // bounding box of the positions
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        int maxZ = Integer.MIN_VALUE;
+        for (BlockPos pos : positions) {
+            minX = Math.min(minX, pos.getX());
+            minY = Math.min(minY, pos.getY());
+            minZ = Math.min(minZ, pos.getZ());
+            maxX = Math.max(maxX, pos.getX());
+            maxY = Math.max(maxY, pos.getY());
+            maxZ = Math.max(maxZ, pos.getZ());
+        }
+
+        List<ParcelIndexEntry> candidates = TREE.getOverlapping(minX, minY, minZ, maxX, maxY, maxZ, false, true);
+        if (candidates.isEmpty()) {
+            return result;
+        }
+        ParcelIndexEntry[] entries = candidates.toArray(new ParcelIndexEntry[0]);
+        for (int i = 0; i < positions.size(); i++) {
+            BlockPos pos = positions.get(i);
+            int x = pos.getX();
+            int y = pos.getY();
+            int z = pos.getZ();
+            for (ParcelIndexEntry entry : entries) {
+                if (entry.contains(x, y, z)) {
+                    result.set(i);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * segment query. determines the first position along the axis-aligned segment,
+     * starting at (x, y, z) and extending length blocks in the direction, that intersects a parcel.
+     * @param x
+     * @param y
+     * @param z
+     * @param direction
+     * @param length the number of blocks in the segment, including the start
+     * @return the offset (0 -> length-1) from the start of the first hit, or -1 if there is no hit.
+     */
+    public static int findFirstIntersection(int x, int y, int z, Direction direction, int length) {
+        if (length <= 0) {
+            return -1;
+        }
+        int endX = x + direction.getStepX() * (length - 1);
+        int endY = y + direction.getStepY() * (length - 1);
+        int endZ = z + direction.getStepZ() * (length - 1);
+
+        List<ParcelIndexEntry> entries = TREE.getOverlapping(Math.min(x, endX), Math.min(y, endY), Math.min(z, endZ),
+                Math.max(x, endX), Math.max(y, endY), Math.max(z, endZ), false, true);
+
+        int first = -1;
+        for (ParcelIndexEntry entry : entries) {
+            // every entry overlaps the segment, so the hit is where the segment enters the entry along the axis
+            int offset = switch (direction.getAxis()) {
+                case X -> direction.getStepX() > 0 ? entry.getMinX() - x : x - entry.getMaxX();
+                case Y -> direction.getStepY() > 0 ? entry.getMinY() - y : y - entry.getMaxY();
+                case Z -> direction.getStepZ() > 0 ? entry.getMinZ() - z : z - entry.getMaxZ();
+            };
+            offset = Math.max(offset, 0);
+            if (first < 0 || offset < first) {
+                first = offset;
+                if (first == 0) {
+                    break;
+                }
+            }
+        }
+        return first;
     }
 
     public static boolean intersectsParcel(ICoords coords1, ICoords coords2) {
@@ -634,40 +997,57 @@ public class ParcelRegistry {
      * @return
      */
     public static boolean hasAccess(ICoords coords, UUID entityId) {
-        return hasAccess(coords, coords, entityId, ItemStack.EMPTY);
+        return hasAccess(coords, entityId, ItemStack.EMPTY);
     }
 
-    public static boolean hasAccess(ICoords coords, UUID entityId, ItemStack stack) {
-        return hasAccess(coords, coords, entityId, stack);
+    public static boolean hasAccess(ICoords coords, UUID entityId, ItemStack itemStack) {
+        return hasAccess(coords.getX(), coords.getY(), coords.getZ(), entityId, itemStack);
+    }
+
+    /**
+     * allocation-free variant of hasAccess(coords, entityId) for use by the event handlers.
+     * @param x
+     * @param y
+     * @param z
+     * @param entityId
+     * @return
+     */
+    public static boolean hasAccess(int x, int y, int z, UUID entityId) {
+        // point lookup against the player's cache then the hierarchy
+        Parcel parcel = entityId != null ? findLeastSignificant(entityId, x, y, z) : findLeastSignificant(x, y, z);
+        return parcel == null || parcel.grantsAccess(entityId);
+    }
+
+    /**
+     * allocation-free variant of hasAccess(coords, entityId, itemStack) for use by the event handlers.
+     * @param x
+     * @param y
+     * @param z
+     * @param entityId
+     * @param itemStack
+     * @return
+     */
+    public static boolean hasAccess(int x, int y, int z, UUID entityId, ItemStack itemStack) {
+        if (itemStack == ItemStack.EMPTY) {
+            return hasAccess(x, y, z, entityId);
+        }
+        Parcel parcel = entityId != null ? findLeastSignificant(entityId, x, y, z) : findLeastSignificant(x, y, z);
+        // check player's access
+        return parcel == null || parcel.grantsAccess(entityId, itemStack);
     }
 
     public static boolean hasAccess(ICoords coords1, ICoords coords2, UUID entityId, ItemStack itemStack) {
         // this is the fastest lookup
-        List<IInterval<UUID>> intervals = findRaw(coords1, coords2, false, true );
-        if (!intervals.isEmpty()) {
-            Parcel parcel;
-            // convert to parcels
-            List<Parcel> parcels = getAsParcels(intervals);
-
-            if (parcels.isEmpty()) {
-                return true;
-            }
-            if (intervals.size() > 1) {
-                // find the least significant parcel
-                Optional<Parcel> parcelOptional = findLeastSignificant(parcels);
-                if (parcelOptional.isPresent()) {
-                    parcel = parcelOptional.get();
-                } else {
-                    // TODO add chat warning
-                    // TODO add log warning
-                    // TODO maybe do something like labelling as abandoned and has a timer before it is removed from registry.
-                    // this is a case where the interval still exists but the parcel has been removed
-                    TREE.delete(intervals.get(0));
-                    return true;
+        List<ParcelIndexEntry> entries = findRaw(coords1, coords2, false, true );
+        if (!entries.isEmpty()) {
+            // find the least significant parcel
+            ParcelIndexEntry entry = entries.get(0);
+            for (ParcelIndexEntry e : entries) {
+                if (e.getArea() < entry.getArea()) {
+                    entry = e;
                 }
-            } else {
-                parcel = parcels.get(0);
             }
+            Parcel parcel = entry.getParcel();
 
             // check player's access
             return itemStack != ItemStack.EMPTY ? parcel.grantsAccess(entityId, itemStack) : parcel.grantsAccess(entityId);
@@ -681,7 +1061,69 @@ public class ParcelRegistry {
      * @return
      */
     public static Optional<Parcel> findLeastSignificant(ICoords coords) {
-        return findLeastSignificant(ParcelRegistry.find(coords));
+        return Optional.ofNullable(findLeastSignificant(coords.getX(), coords.getY(), coords.getZ()));
+    }
+
+    /**
+     * resolves the least significant parcel by descending the containment hierarchy
+     * (ie. nation -> zone -> citizen) from the top level parcel at the coords.
+     * @param x
+     * @param y
+     * @param z
+     * @return the parcel or null
+     */
+    public static Parcel findLeastSignificant(int x, int y, int z) {
+        ParcelIndexEntry entry = HIERARCHY.findLeastSignificant(x, y, z);
+        return entry == null ? null : entry.getParcel();
+    }
+
+    /**
+     * the parcel that directly encloses the given parcel ie. the zone of a citizen parcel
+     * @param parcelId
+     * @return
+     */
+    public static Optional<Parcel> findParent(UUID parcelId) {
+        return HIERARCHY.getParent(parcelId).map(ParcelIndexEntry::getParcel);
+    }
+
+    /**
+     * cached variant of findLeastSignificant() for an entity (player). players spend most
+     * of their time inside one parcel, so the last resolved parcel is checked first.
+     * @param entityId
+     * @param x
+     * @param y
+     * @param z
+     * @return the parcel or null
+     */
+    public static Parcel findLeastSignificant(UUID entityId, int x, int y, int z) {
+        Parcel parcel = LOOKUP_CACHE.get(entityId, version, x, y, z);
+        if (parcel != null) {
+            return parcel;
+        }
+        ParcelIndexEntry entry = HIERARCHY.findLeastSignificant(x, y, z);
+        if (entry == null) {
+            return null;
+        }
+        // only on a miss ie. when the entity moves into another parcel
+        LOOKUP_CACHE.put(entityId, version, entry, TREE.getOverlapping(entry.getMinX(), entry.getMinY(), entry.getMinZ(),
+                entry.getMaxX(), entry.getMaxY(), entry.getMaxZ(), false, true), x, z);
+        return entry.getParcel();
+    }
+
+    /**
+     * removes the cached lookup of an entity ie. when it leaves the level or the player logs out
+     * @param entityId
+     */
+    public static void invalidateLookup(UUID entityId) {
+        LOOKUP_CACHE.remove(entityId);
+    }
+
+    public static int getCachedLookupCount() {
+        return LOOKUP_CACHE.size();
+    }
+
+    public static int getVersion() {
+        return version;
     }
 
     public static Optional<Parcel> findLeastSignificant(List<Parcel> parcels) {
@@ -762,7 +1204,7 @@ public class ParcelRegistry {
     }
 
     public static int size() {
-        return PARCELS_BY_COORDS.size();
+        return PARCELS_BY_ID.size();
     }
 
     /**
@@ -771,7 +1213,7 @@ public class ParcelRegistry {
      * @return
      */
     public static Optional<Parcel> findByName(String name) {
-        return PARCELS_BY_COORDS.values().stream().filter(p -> p.getName().equalsIgnoreCase(name)).findFirst();
+        return PARCELS_BY_ID.values().stream().filter(p -> p.getName().equalsIgnoreCase(name)).findFirst();
     }
 
     public static boolean updateOwner(UUID parcelId, UUID ownerId) {
@@ -784,6 +1226,8 @@ public class ParcelRegistry {
             }
             List<Parcel> parcels = PARCELS_BY_OWNER.get(ownerId);
             parcels.add(parcel.get());
+            markDirty(parcel.get());
+            version++;
             return true;
         } else {
             return false;
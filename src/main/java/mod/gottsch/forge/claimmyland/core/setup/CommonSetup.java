@@ -22,6 +22,7 @@ package mod.gottsch.forge.claimmyland.core.setup;
 import mod.gottsch.forge.claimmyland.ClaimMyLand;
 import mod.gottsch.forge.claimmyland.core.config.Config;
 import mod.gottsch.forge.claimmyland.core.item.ModItems;
+import mod.gottsch.forge.claimmyland.core.network.ModNetworking;
 import net.minecraft.world.item.CreativeModeTab;
 import net.minecraft.world.item.CreativeModeTabs;
 import net.minecraftforge.event.BuildCreativeModeTabContentsEvent;
@@ -45,6 +46,8 @@ public class CommonSetup {
         // create a claimmyland specific log file
         Config.instance.addRollingFileAppender(ClaimMyLand.MOD_ID);
         ClaimMyLand.LOGGER.debug("file appender created");
+
+        ModNetworking.register();
     }
 
     @SubscribeEvent
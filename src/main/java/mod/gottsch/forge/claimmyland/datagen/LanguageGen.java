@@ -114,6 +114,17 @@ public class LanguageGen extends LanguageProvider {
         add(LangUtil.chat("parcel.transfer.success"), "The parcel has been transferred.");
         add(LangUtil.chat("parcel.transfer.failure"), "Unable to transfer the parcel.");
 
+        add(LangUtil.chat("parcel.backup.started"), "Backing up the parcels to %s...");
+        add(LangUtil.chat("parcel.backup.success"), "%s parcels have been backed up to %s.");
+        add(LangUtil.chat("parcel.backup.failure"), "Unable to back up the parcels.");
+        add(LangUtil.chat("parcel.restore.started"), "Restoring the parcels from %s...");
+        add(LangUtil.chat("parcel.restore.success"), "%s parcels have been restored from %s.");
+        add(LangUtil.chat("parcel.restore.failure"), "Unable to restore the parcels from %s.");
+        add(LangUtil.chat("parcel.restore.not_found"), "There are no parcel backups to restore.");
+        add(LangUtil.chat("parcel.clear.success"), "All parcels have been cleared. They can be restored from %s.");
+
+        add(LangUtil.chat("border.stats"), "Border refreshes: %s stones, %s queued, %s last tick in %s ms (max %s ms), %s total.");
+
         add(LangUtil.chat("parcel.whitelist.add.success"), "A player was added to the whitelist.");
         add(LangUtil.chat("parcel.whitelist.add.failure"), "Unable to player to the whitelist.");
         add(LangUtil.chat("parcel.whitelist.list"), "Whitelist for property ");
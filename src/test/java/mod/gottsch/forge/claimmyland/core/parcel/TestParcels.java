@@ -0,0 +1,107 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.parcel;
+
+import mod.gottsch.forge.claimmyland.core.registry.ParcelIndexEntry;
+import mod.gottsch.forge.gottschcore.spatial.Box;
+import mod.gottsch.forge.gottschcore.spatial.Coords;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * parcels for the tests. the size is relative to the coords, as for a claimed deed.
+ */
+public final class TestParcels {
+
+    private TestParcels() {}
+
+    /**
+     * a player parcel with its min corner at x, y, z
+     * @param x
+     * @param y
+     * @param z
+     * @param width the x and z size
+     * @param height the y size
+     * @return
+     */
+    public static Parcel player(int x, int y, int z, int width, int height) {
+        return populate(new PlayerParcel(), x, y, z, width, height);
+    }
+
+    public static NationParcel nation(int x, int y, int z, int width, int height) {
+        NationParcel parcel = populate(new NationParcel(), x, y, z, width, height);
+        parcel.setNationId(UUID.randomUUID());
+        return parcel;
+    }
+
+    /**
+     * a player parcel at random within -range..range on x and z, and 0..127 on y
+     * @param random
+     * @param range
+     * @param maxWidth
+     * @param maxHeight
+     * @return
+     */
+    public static Parcel random(Random random, int range, int maxWidth, int maxHeight) {
+        return player(random.nextInt(2 * range) - range, random.nextInt(128), random.nextInt(2 * range) - range,
+                1 + random.nextInt(maxWidth), 1 + random.nextInt(maxHeight));
+    }
+
+    /**
+     * the index entry of the parcel's box
+     * @param parcel
+     * @return
+     */
+    public static ParcelIndexEntry entry(Parcel parcel) {
+        return new ParcelIndexEntry(parcel, parcel.getBox());
+    }
+
+    /**
+     * the saved tags of the parcels, as in the registry tag of a legacy save
+     * @param parcels
+     * @return
+     */
+    public static ListTag tags(List<? extends Parcel> parcels) {
+        ListTag tags = new ListTag();
+        parcels.forEach(parcel -> {
+            CompoundTag tag = new CompoundTag();
+            parcel.save(tag);
+            tags.add(tag);
+        });
+        return tags;
+    }
+
+    private static <T extends Parcel> T populate(T parcel, int x, int y, int z, int width, int height) {
+        parcel.setId(UUID.randomUUID());
+        parcel.setOwnerId(UUID.randomUUID());
+        parcel.setDeedId(UUID.randomUUID());
+        parcel.setName("parcel-" + x + "-" + z);
+        parcel.setCoords(Coords.of(x, y, z));
+        parcel.setSize(new Box(Coords.of(0, 0, 0), Coords.of(width - 1, height - 1, width - 1)));
+        parcel.setFoundedTime(1000L);
+        parcel.setOwnerTime(2000L);
+        parcel.setAbandonedTime(0L);
+        return parcel;
+    }
+}
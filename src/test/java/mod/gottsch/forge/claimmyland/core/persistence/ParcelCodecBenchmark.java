@@ -0,0 +1,127 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.persistence;
+
+import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
+import mod.gottsch.forge.claimmyland.core.parcel.TestParcels;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * compares the binary codec with the (compressed) nbt format of the legacy shards, for 100k parcels.
+ * run with gradlew benchmark.
+ */
+@Tag("benchmark")
+public class ParcelCodecBenchmark {
+	private static final int PARCELS = 100_000;
+	private static final int ROUNDS = 5;
+
+	@Test
+	public void codecVersusNbt() throws IOException {
+		List<Parcel> parcels = createParcels();
+
+		byte[] nbt = null;
+		byte[] encoded = null;
+		long nbtWrite = Long.MAX_VALUE;
+		long nbtRead = Long.MAX_VALUE;
+		long codecWrite = Long.MAX_VALUE;
+		long codecRead = Long.MAX_VALUE;
+		// the best of the rounds, the first rounds being the warm-up
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			nbt = writeNbt(parcels);
+			nbtWrite = Math.min(nbtWrite, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			assertEquals(PARCELS, readNbt(nbt).size());
+			nbtRead = Math.min(nbtRead, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			encoded = ParcelCodec.encode(parcels);
+			codecWrite = Math.min(codecWrite, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			assertEquals(PARCELS, ParcelCodec.decode(new DataInputStream(new ByteArrayInputStream(encoded))).size());
+			codecRead = Math.min(codecRead, System.nanoTime() - start);
+		}
+
+		int uncompressed = writeUncompressedNbt(parcels).length;
+		System.out.printf("%d parcels%n", PARCELS);
+		System.out.printf("nbt   -> %,d bytes (%,d uncompressed), write %d ms, read %d ms%n", nbt.length, uncompressed,
+				nbtWrite / 1_000_000, nbtRead / 1_000_000);
+		System.out.printf("codec -> %,d bytes, write %d ms, read %d ms%n", encoded.length, codecWrite / 1_000_000, codecRead / 1_000_000);
+		assertTrue(encoded.length < uncompressed);
+	}
+
+	/**
+	 * parcels spread over the world, a third of them with a whitelist
+	 * @return
+	 */
+	static List<Parcel> createParcels() {
+		Random random = new Random(14);
+		List<Parcel> parcels = new ArrayList<>(PARCELS);
+		for (int i = 0; i < PARCELS; i++) {
+			Parcel parcel = TestParcels.random(random, 100_000, 80, 80);
+			if (i % 3 == 0) {
+				for (int j = random.nextInt(4); j >= 0; j--) {
+					parcel.getWhitelist().add(UUID.randomUUID());
+				}
+			}
+			parcels.add(parcel);
+		}
+		return parcels;
+	}
+
+	private static CompoundTag createTag(List<Parcel> parcels) {
+		CompoundTag tag = new CompoundTag();
+		tag.put("parcels", TestParcels.tags(parcels));
+		return tag;
+	}
+
+	private static byte[] writeNbt(List<Parcel> parcels) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		NbtIo.writeCompressed(createTag(parcels), bytes);
+		return bytes.toByteArray();
+	}
+
+	private static byte[] writeUncompressedNbt(List<Parcel> parcels) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream output = new DataOutputStream(bytes)) {
+			NbtIo.write(createTag(parcels), output);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static List<Parcel> readNbt(byte[] data) throws IOException {
+		CompoundTag tag = NbtIo.readCompressed(new ByteArrayInputStream(data));
+		return ParcelMigrator.migrate(tag.getList("parcels", net.minecraft.nbt.Tag.TAG_COMPOUND), ParcelMigrator.SCHEMA_VERSION);
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.persistence;
+
+import mod.gottsch.forge.claimmyland.core.parcel.*;
+import mod.gottsch.forge.gottschcore.spatial.ICoords;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParcelCodecTest {
+
+	@Test
+	public void roundTripsAllTheFields() throws IOException {
+		Parcel player = TestParcels.player(-100, 64, 250, 16, 32);
+		player.getWhitelist().add(UUID.randomUUID());
+		player.getWhitelist().add(UUID.randomUUID());
+
+		NationParcel nation = TestParcels.nation(1000, -64, -1000, 256, 384);
+		nation.setBorderType(NationBorderType.OPEN);
+		nation.getBlacklist().add(UUID.randomUUID());
+
+		// no optional fields
+		Parcel abandoned = TestParcels.player(0, 0, 0, 8, 8);
+		abandoned.setOwnerId(null);
+		abandoned.setDeedId(null);
+		abandoned.setName(null);
+
+		List<Parcel> parcels = ParcelCodec.decode(input(ParcelCodec.encode(List.of(player, nation, abandoned))));
+
+		assertEquals(3, parcels.size());
+		assertParcel(player, parcels.get(0));
+		assertParcel(nation, parcels.get(1));
+		assertParcel(abandoned, parcels.get(2));
+
+		NationParcel decoded = assertInstanceOf(NationParcel.class, parcels.get(1));
+		assertEquals(NationBorderType.OPEN, decoded.getBorderType());
+		assertEquals(nation.getBlacklist(), decoded.getBlacklist());
+	}
+
+	/**
+	 * the snapshot is encoded off the server thread, so later changes to the parcel must not show
+	 */
+	@Test
+	public void snapshotIsNotChangedByTheParcel() throws IOException {
+		Parcel parcel = TestParcels.player(0, 64, 0, 16, 16);
+		parcel.getWhitelist().add(UUID.randomUUID());
+		ParcelCodec.Snapshot snapshot = ParcelCodec.Snapshot.of(parcel);
+		byte[] expected = ParcelCodec.encode(List.of(parcel));
+
+		parcel.getWhitelist().add(UUID.randomUUID());
+		parcel.setName("renamed");
+
+		assertArrayEquals(expected, ParcelCodec.encodeSnapshots(List.of(snapshot)));
+	}
+
+	@Test
+	public void varIntsRoundTrip() throws IOException {
+		for (int value : new int[] {0, 1, 127, 128, 16_383, 16_384, Integer.MAX_VALUE}) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ParcelCodec.writeVarInt(new DataOutputStream(bytes), value);
+			assertEquals(value, ParcelCodec.readVarInt(input(bytes.toByteArray())));
+		}
+	}
+
+	@Test
+	public void rejectsDataThatIsNotAShard() {
+		assertThrows(IOException.class, () -> ParcelCodec.decode(input(new byte[] {1, 2, 3, 4, 5, 0})));
+
+		byte[] data = ParcelCodec.encode(List.of());
+		// the version follows the magic
+		data[4] = (byte) (ParcelCodec.VERSION + 1);
+		assertThrows(IOException.class, () -> ParcelCodec.decode(input(data)));
+	}
+
+	private static DataInputStream input(byte[] data) {
+		return new DataInputStream(new ByteArrayInputStream(data));
+	}
+
+	static void assertParcel(Parcel expected, Parcel actual) {
+		assertEquals(expected.getType(), actual.getType());
+		assertEquals(expected.getId(), actual.getId());
+		assertEquals(expected.getNationId(), actual.getNationId());
+		assertEquals(expected.getOwnerId(), actual.getOwnerId());
+		assertEquals(expected.getDeedId(), actual.getDeedId());
+		assertEquals(expected.getName(), actual.getName());
+		assertCoords(expected.getCoords(), actual.getCoords());
+		assertCoords(expected.getSize().getMinCoords(), actual.getSize().getMinCoords());
+		assertCoords(expected.getSize().getMaxCoords(), actual.getSize().getMaxCoords());
+		assertEquals(expected.getWhitelist(), actual.getWhitelist());
+		assertEquals(expected.getFoundedTime(), actual.getFoundedTime());
+		assertEquals(expected.getOnwerTime(), actual.getOnwerTime());
+		assertEquals(expected.getAbandonedTime(), actual.getAbandonedTime());
+	}
+
+	private static void assertCoords(ICoords expected, ICoords actual) {
+		assertEquals(expected.getX(), actual.getX());
+		assertEquals(expected.getY(), actual.getY());
+		assertEquals(expected.getZ(), actual.getZ());
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.persistence;
+
+import mod.gottsch.forge.claimmyland.core.parcel.AbstractParcel;
+import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
+import mod.gottsch.forge.claimmyland.core.parcel.TestParcels;
+import net.minecraft.nbt.ListTag;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * migrates a synthetic legacy save (the monolithic registry tag) of 100k parcels.
+ * run with gradlew benchmark.
+ */
+@Tag("benchmark")
+public class ParcelMigratorBenchmark {
+	private static final int ROUNDS = 3;
+
+	@Test
+	public void migrateLegacySave() {
+		List<Parcel> parcels = ParcelCodecBenchmark.createParcels();
+
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			// the tags are migrated in place, so each round gets a fresh save
+			ListTag tags = TestParcels.tags(parcels);
+			for (int i = 0; i < tags.size(); i += 2) {
+				// legacy saves have lowercase types
+				tags.getCompound(i).putString(AbstractParcel.TYPE, "player");
+			}
+
+			long start = System.nanoTime();
+			List<Parcel> migrated = ParcelMigrator.migrate(tags, ParcelMigrator.MONOLITHIC);
+			best = Math.min(best, System.nanoTime() - start);
+			assertEquals(parcels.size(), migrated.size());
+		}
+		System.out.printf("migrated %d parcels in %d ms%n", parcels.size(), best / 1_000_000);
+	}
+}
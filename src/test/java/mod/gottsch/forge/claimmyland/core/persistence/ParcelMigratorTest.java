@@ -0,0 +1,124 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.persistence;
+
+import mod.gottsch.forge.claimmyland.core.parcel.AbstractParcel;
+import mod.gottsch.forge.claimmyland.core.parcel.NationParcel;
+import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
+import mod.gottsch.forge.claimmyland.core.parcel.ParcelType;
+import mod.gottsch.forge.claimmyland.core.parcel.TestParcels;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.StringTag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParcelMigratorTest {
+
+	@Test
+	public void migratesSavedParcelsUnchanged() {
+		Parcel player = TestParcels.player(10, 64, 10, 16, 16);
+		player.getWhitelist().add(UUID.randomUUID());
+		NationParcel nation = TestParcels.nation(-500, 0, -500, 128, 256);
+		nation.getBlacklist().add(UUID.randomUUID());
+
+		List<Parcel> parcels = ParcelMigrator.migrate(TestParcels.tags(List.of(player, nation)), ParcelMigrator.NBT_SHARDS);
+
+		assertEquals(2, parcels.size());
+		ParcelCodecTest.assertParcel(player, parcels.get(0));
+		ParcelCodecTest.assertParcel(nation, parcels.get(1));
+		assertEquals(nation.getBlacklist(), ((NationParcel) parcels.get(1)).getBlacklist());
+	}
+
+	@Test
+	public void normalizesTheType() {
+		ListTag tags = TestParcels.tags(List.of(TestParcels.player(0, 0, 0, 16, 16)));
+		tags.getCompound(0).putString(AbstractParcel.TYPE, "player");
+
+		List<Parcel> parcels = ParcelMigrator.migrate(tags, ParcelMigrator.NBT_SHARDS);
+
+		assertEquals(1, parcels.size());
+		assertEquals(ParcelType.PLAYER, parcels.get(0).getType());
+		assertEquals("PLAYER", tags.getCompound(0).getString(AbstractParcel.TYPE));
+	}
+
+	@Test
+	public void dropsParcelsWithoutATypeOrCoords() {
+		ListTag tags = TestParcels.tags(List.of(TestParcels.player(0, 0, 0, 16, 16), TestParcels.player(100, 0, 100, 16, 16),
+				TestParcels.player(200, 0, 200, 16, 16)));
+		tags.getCompound(0).remove(AbstractParcel.TYPE);
+		tags.getCompound(1).remove(AbstractParcel.COORDS_KEY);
+		// not a compound
+		tags.add(StringTag.valueOf("parcel"));
+
+		List<Parcel> parcels = ParcelMigrator.migrate(tags, ParcelMigrator.NBT_SHARDS);
+
+		assertEquals(1, parcels.size());
+		assertEquals(200, parcels.get(0).getCoords().getX());
+	}
+
+	@Test
+	public void assignsAMissingId() {
+		ListTag tags = TestParcels.tags(List.of(TestParcels.player(0, 0, 0, 16, 16)));
+		tags.getCompound(0).remove(AbstractParcel.ID_KEY);
+
+		List<Parcel> parcels = ParcelMigrator.migrate(tags, ParcelMigrator.NBT_SHARDS);
+
+		assertEquals(1, parcels.size());
+		assertNotNull(parcels.get(0).getId());
+	}
+
+	@Test
+	public void currentVersionIsNotMigrated() {
+		ListTag tags = TestParcels.tags(List.of(TestParcels.player(0, 0, 0, 16, 16)));
+		tags.getCompound(0).remove(AbstractParcel.ID_KEY);
+
+		ParcelMigrator.migrate(tags, ParcelMigrator.SCHEMA_VERSION);
+
+		assertFalse(tags.getCompound(0).hasUUID(AbstractParcel.ID_KEY));
+	}
+
+	/**
+	 * lists larger than a batch are migrated in parallel, in order
+	 */
+	@Test
+	public void batchesKeepTheOrder() {
+		List<Parcel> expected = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			expected.add(TestParcels.player(i * 16, 64, 0, 16, 16));
+		}
+		ListTag tags = TestParcels.tags(expected);
+		// one invalid parcel in a middle batch
+		tags.getCompound(2500).remove(AbstractParcel.TYPE);
+
+		List<Parcel> parcels = ParcelMigrator.migrate(tags, ParcelMigrator.MONOLITHIC);
+
+		assertEquals(expected.size() - 1, parcels.size());
+		for (int i = 0, j = 0; i < expected.size(); i++) {
+			if (i != 2500) {
+				assertEquals(expected.get(i).getId(), parcels.get(j++).getId());
+			}
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.registry;
+
+import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
+import mod.gottsch.forge.claimmyland.core.parcel.TestParcels;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParcelChunkIndexTest {
+
+    @Test
+    public void findsTheParcelInEveryColumnItSpans() {
+        // spans chunks -1..2 on both axes
+        Parcel parcel = TestParcels.player(-10, 0, -10, 48, 16);
+        ParcelChunkIndex index = new ParcelChunkIndex();
+        index.add(TestParcels.entry(parcel));
+
+        for (int x = -10; x < 38; x++) {
+            for (int z = -10; z < 38; z++) {
+                assertTrue(index.intersects(x, 5, z));
+                assertSame(parcel, index.findLeastSignificant(x, 5, z));
+            }
+        }
+        assertFalse(index.intersects(-11, 5, 0));
+        assertFalse(index.intersects(38, 5, 0));
+        assertFalse(index.intersects(0, 16, 0));
+        assertEquals(0, index.getColumn(100, 100).length);
+    }
+
+    @Test
+    public void leastSignificantIsTheSmallestContainingParcel() {
+        Parcel outer = TestParcels.player(0, 0, 0, 64, 64);
+        Parcel inner = TestParcels.player(8, 8, 8, 8, 8);
+        ParcelChunkIndex index = new ParcelChunkIndex();
+        index.add(TestParcels.entry(outer));
+        index.add(TestParcels.entry(inner));
+
+        assertSame(inner, index.findLeastSignificant(10, 10, 10));
+        assertSame(outer, index.findLeastSignificant(20, 10, 20));
+        assertEquals(2, index.find(10, 10, 10).size());
+        assertEquals(List.of(outer), index.find(20, 10, 20));
+    }
+
+    @Test
+    public void removeClearsAllTheColumns() {
+        Parcel parcel = TestParcels.player(0, 0, 0, 40, 16);
+        ParcelChunkIndex index = new ParcelChunkIndex();
+        ParcelIndexEntry entry = TestParcels.entry(parcel);
+        index.add(entry);
+
+        assertSame(entry, index.remove(parcel.getId()));
+        assertNull(index.remove(parcel.getId()));
+        assertEquals(0, index.size());
+        for (int x = 0; x < 40; x += 8) {
+            assertEquals(0, index.getColumn(x, x).length);
+        }
+    }
+
+    @Test
+    public void addReplacesThePreviousEntryOfTheParcel() {
+        Parcel parcel = TestParcels.player(0, 0, 0, 16, 16);
+        ParcelChunkIndex index = new ParcelChunkIndex();
+        index.add(TestParcels.entry(parcel));
+        // the parcel moved
+        index.add(new ParcelIndexEntry(parcel, 100, 0, 100, 115, 15, 115));
+
+        assertEquals(1, index.size());
+        assertFalse(index.intersects(5, 5, 5));
+        assertSame(parcel, index.findLeastSignificant(105, 5, 105));
+    }
+}
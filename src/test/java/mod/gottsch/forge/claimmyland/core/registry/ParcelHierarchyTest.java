@@ -0,0 +1,176 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.registry;
+
+import mod.gottsch.forge.claimmyland.core.parcel.TestParcels;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParcelHierarchyTest {
+
+    @Test
+    public void resolvesTheInnermostNestedParcel() {
+        ParcelIndexEntry nation = TestParcels.entry(TestParcels.player(0, 0, 0, 256, 128));
+        ParcelIndexEntry zone = TestParcels.entry(TestParcels.player(32, 0, 32, 64, 128));
+        ParcelIndexEntry citizen = TestParcels.entry(TestParcels.player(40, 10, 40, 16, 16));
+        ParcelHierarchy hierarchy = new ParcelHierarchy();
+        hierarchy.build(List.of(citizen, nation, zone));
+
+        assertSame(citizen, hierarchy.findLeastSignificant(45, 15, 45));
+        assertSame(zone, hierarchy.findLeastSignificant(90, 15, 90));
+        assertSame(nation, hierarchy.findLeastSignificant(200, 15, 200));
+        assertNull(hierarchy.findLeastSignificant(300, 15, 300));
+
+        assertSame(zone, hierarchy.getParent(citizen.getParcel().getId()).orElseThrow());
+        assertSame(nation, hierarchy.getParent(zone.getParcel().getId()).orElseThrow());
+        assertTrue(hierarchy.getParent(nation.getParcel().getId()).isEmpty());
+    }
+
+    @Test
+    public void addedParcelAdoptsTheParcelsItEncloses() {
+        ParcelIndexEntry citizen = TestParcels.entry(TestParcels.player(40, 10, 40, 16, 16));
+        ParcelHierarchy hierarchy = new ParcelHierarchy();
+        hierarchy.add(citizen);
+        ParcelIndexEntry zone = TestParcels.entry(TestParcels.player(32, 0, 32, 64, 128));
+        hierarchy.add(zone);
+
+        assertSame(zone, hierarchy.getParent(citizen.getParcel().getId()).orElseThrow());
+        assertEquals(List.of(citizen), hierarchy.getChildren(zone.getParcel().getId()));
+        assertSame(citizen, hierarchy.findLeastSignificant(45, 15, 45));
+    }
+
+    @Test
+    public void removedParcelsChildrenMoveUp() {
+        ParcelIndexEntry nation = TestParcels.entry(TestParcels.player(0, 0, 0, 256, 128));
+        ParcelIndexEntry zone = TestParcels.entry(TestParcels.player(32, 0, 32, 64, 128));
+        ParcelIndexEntry citizen = TestParcels.entry(TestParcels.player(40, 10, 40, 16, 16));
+        ParcelHierarchy hierarchy = new ParcelHierarchy();
+        hierarchy.build(List.of(nation, zone, citizen));
+
+        hierarchy.remove(zone.getParcel().getId());
+        assertSame(nation, hierarchy.getParent(citizen.getParcel().getId()).orElseThrow());
+        assertSame(citizen, hierarchy.findLeastSignificant(45, 15, 45));
+        assertSame(nation, hierarchy.findLeastSignificant(90, 15, 90));
+    }
+
+    /**
+     * overlapping parcels that don't enclose each other are siblings. the smallest containing parcel
+     * is found whichever of the siblings it is attached to.
+     */
+    @Test
+    public void overlappingSiblingsResolveTheSmallestContainingParcel() {
+        ParcelIndexEntry large = TestParcels.entry(TestParcels.player(0, 0, 0, 100, 100));
+        ParcelIndexEntry medium = TestParcels.entry(TestParcels.player(50, 0, 50, 80, 100));
+        // inside both large and medium
+        ParcelIndexEntry small = TestParcels.entry(TestParcels.player(55, 0, 55, 20, 20));
+        ParcelHierarchy hierarchy = new ParcelHierarchy();
+        hierarchy.build(List.of(large, medium, small));
+
+        assertSame(small, hierarchy.findLeastSignificant(60, 5, 60));
+        assertSame(medium, hierarchy.findLeastSignificant(60, 50, 60));
+    }
+
+    /**
+     * a parent with more than a few children indexes them by chunk. the lookups are the same
+     * when it is indexed, and after enough children are removed that it no longer is.
+     */
+    @Test
+    public void manyChildrenAreFoundByChunk() {
+        ParcelIndexEntry nation = TestParcels.entry(TestParcels.player(0, 0, 0, 512, 128));
+        List<ParcelIndexEntry> citizens = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            citizens.add(TestParcels.entry(TestParcels.player((i % 8) * 64, 10, (i / 8) * 64, 16, 16)));
+        }
+        List<ParcelIndexEntry> entries = new ArrayList<>(citizens);
+        entries.add(nation);
+        ParcelHierarchy hierarchy = new ParcelHierarchy();
+        hierarchy.build(entries);
+
+        assertEquals(64, hierarchy.getChildren(nation.getParcel().getId()).size());
+        for (ParcelIndexEntry citizen : citizens) {
+            assertSame(citizen, hierarchy.findLeastSignificant(citizen.getMinX() + 5, 15, citizen.getMinZ() + 5));
+            assertSame(nation, hierarchy.getParent(citizen.getParcel().getId()).orElseThrow());
+        }
+        assertSame(nation, hierarchy.findLeastSignificant(40, 15, 40));
+
+        // a zone added among the indexed children adopts the ones it encloses (x and z 4..7)
+        ParcelIndexEntry zone = TestParcels.entry(TestParcels.player(256, 0, 256, 256, 64));
+        hierarchy.add(zone);
+        assertEquals(49, hierarchy.getChildren(nation.getParcel().getId()).size());
+        assertEquals(16, hierarchy.getChildren(zone.getParcel().getId()).size());
+        assertSame(zone, hierarchy.getParent(citizens.get(63).getParcel().getId()).orElseThrow());
+        assertSame(nation, hierarchy.getParent(citizens.get(0).getParcel().getId()).orElseThrow());
+        assertSame(zone, hierarchy.findLeastSignificant(300, 15, 300));
+        for (ParcelIndexEntry citizen : citizens) {
+            assertSame(citizen, hierarchy.findLeastSignificant(citizen.getMinX() + 5, 15, citizen.getMinZ() + 5));
+        }
+
+        // and gives them back when removed
+        hierarchy.remove(zone.getParcel().getId());
+        assertEquals(64, hierarchy.getChildren(nation.getParcel().getId()).size());
+        assertSame(nation, hierarchy.getParent(citizens.get(63).getParcel().getId()).orElseThrow());
+
+        // down to a few children, which are no longer indexed
+        for (int i = 0; i < 60; i++) {
+            hierarchy.remove(citizens.get(i).getParcel().getId());
+        }
+        assertEquals(4, hierarchy.getChildren(nation.getParcel().getId()).size());
+        assertSame(nation, hierarchy.findLeastSignificant(5, 15, 5));
+        for (int i = 60; i < 64; i++) {
+            ParcelIndexEntry citizen = citizens.get(i);
+            assertSame(citizen, hierarchy.findLeastSignificant(citizen.getMinX() + 5, 15, citizen.getMinZ() + 5));
+        }
+    }
+
+    @Test
+    public void matchesTheChunkIndexForRandomLayouts() {
+        Random random = new Random(3);
+        List<ParcelIndexEntry> entries = new ArrayList<>();
+        ParcelChunkIndex index = new ParcelChunkIndex();
+        for (int i = 0; i < 400; i++) {
+            ParcelIndexEntry entry = TestParcels.entry(TestParcels.random(random, 200, 96, 64));
+            entries.add(entry);
+            index.add(entry);
+        }
+        ParcelHierarchy hierarchy = new ParcelHierarchy();
+        hierarchy.build(entries);
+
+        for (int i = 0; i < 5000; i++) {
+            int x = random.nextInt(500) - 250;
+            int y = random.nextInt(200);
+            int z = random.nextInt(500) - 250;
+            ParcelIndexEntry expected = index.findLeastSignificantEntry(x, y, z);
+            ParcelIndexEntry actual = hierarchy.findLeastSignificant(x, y, z);
+            if (expected == null) {
+                assertNull(actual);
+            } else {
+                // equal areas may resolve to either parcel
+                assertNotNull(actual);
+                assertEquals(expected.getArea(), actual.getArea());
+                assertTrue(actual.contains(x, y, z));
+            }
+        }
+    }
+}
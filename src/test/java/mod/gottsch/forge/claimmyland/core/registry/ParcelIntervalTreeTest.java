@@ -0,0 +1,119 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.registry;
+
+import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
+import mod.gottsch.forge.claimmyland.core.parcel.TestParcels;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParcelIntervalTreeTest {
+
+    private static List<ParcelIndexEntry> randomEntries(Random random, int count) {
+        List<ParcelIndexEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(TestParcels.entry(TestParcels.random(random, 1000, 64, 32)));
+        }
+        return entries;
+    }
+
+    private static Set<ParcelIndexEntry> bruteForce(List<ParcelIndexEntry> entries, int x1, int y1, int z1, int x2, int y2, int z2) {
+        Set<ParcelIndexEntry> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ParcelIndexEntry entry : entries) {
+            if (entry.intersects(x1, y1, z1, x2, y2, z2)) {
+                found.add(entry);
+            }
+        }
+        return found;
+    }
+
+    private static Set<ParcelIndexEntry> asSet(List<ParcelIndexEntry> entries) {
+        Set<ParcelIndexEntry> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(entries);
+        return set;
+    }
+
+    @Test
+    public void builtAndInsertedTreesMatchBruteForce() {
+        Random random = new Random(42);
+        List<ParcelIndexEntry> entries = randomEntries(random, 2000);
+
+        ParcelIntervalTree built = new ParcelIntervalTree();
+        built.build(entries);
+        ParcelIntervalTree inserted = new ParcelIntervalTree();
+        entries.forEach(inserted::insert);
+        assertEquals(entries.size(), built.size());
+        assertEquals(entries.size(), inserted.size());
+
+        for (int i = 0; i < 500; i++) {
+            int x = random.nextInt(2200) - 1100;
+            int y = random.nextInt(170);
+            int z = random.nextInt(2200) - 1100;
+            int size = random.nextInt(100);
+            Set<ParcelIndexEntry> expected = bruteForce(entries, x, y, z, x + size, y + size, z + size);
+            assertEquals(expected, asSet(built.getOverlapping(x, y, z, x + size, y + size, z + size, false, true)));
+            assertEquals(expected, asSet(inserted.getOverlapping(x, y, z, x + size, y + size, z + size, false, true)));
+        }
+    }
+
+    @Test
+    public void treeStaysBalanced() {
+        ParcelIntervalTree tree = new ParcelIntervalTree();
+        // sorted inserts are the worst case for an unbalanced tree
+        for (int i = 0; i < 1024; i++) {
+            Parcel parcel = TestParcels.player(i * 10, 0, 0, 5, 5);
+            tree.insert(TestParcels.entry(parcel));
+        }
+        assertTrue(tree.height() <= 15, "height -> " + tree.height());
+    }
+
+    @Test
+    public void deleteRemovesOnlyTheEntry() {
+        Random random = new Random(7);
+        List<ParcelIndexEntry> entries = randomEntries(random, 500);
+        ParcelIntervalTree tree = new ParcelIntervalTree();
+        tree.build(entries);
+
+        List<ParcelIndexEntry> remaining = new ArrayList<>(entries);
+        for (int i = 0; i < 250; i++) {
+            ParcelIndexEntry entry = remaining.remove(random.nextInt(remaining.size()));
+            assertTrue(tree.delete(entry));
+        }
+        assertEquals(remaining.size(), tree.size());
+        assertEquals(asSet(remaining), asSet(tree.list()));
+        assertEquals(bruteForce(remaining, -1100, 0, -1100, 1100, 200, 1100),
+                asSet(tree.getOverlapping(-1100, 0, -1100, 1100, 200, 1100, false, true)));
+    }
+
+    @Test
+    public void touchingBordersOnlyOverlapWhenIncluded() {
+        ParcelIntervalTree tree = new ParcelIntervalTree();
+        Parcel parcel = TestParcels.player(0, 0, 0, 10, 10);
+        tree.insert(TestParcels.entry(parcel));
+
+        // the parcel is 0..9, the query starts on its max border
+        assertEquals(1, tree.getOverlapping(9, 0, 0, 20, 9, 9, false, true).size());
+        assertTrue(tree.getOverlapping(9, 0, 0, 20, 9, 9, false, false).isEmpty());
+        assertTrue(tree.getOverlapping(10, 0, 0, 20, 9, 9, false, true).isEmpty());
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * This file is part of  Claim My Land.
+ * Copyright (c) 2024 Mark Gottschling (gottsch)
+ *
+ * All rights reserved.
+ *
+ * Claim My Land is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Claim My Land is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Claim My Land.  If not, see <http://www.gnu.org/licenses/lgpl>.
+ */
+package mod.gottsch.forge.claimmyland.core.registry;
+
+import mod.gottsch.forge.claimmyland.core.parcel.Parcel;
+import mod.gottsch.forge.claimmyland.core.parcel.TestParcels;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * behaviour and allocation of the primitive lookups used by the event handlers.
+ * the uuid overloads don't touch the item stacks, so the game doesn't need to be bootstrapped.
+ */
+public class ParcelRegistryAccessTest {
+    private static final int WARM_UP = 20_000;
+    private static final int CALLS = 100_000;
+
+    private Parcel parcel;
+    private UUID whitelisted;
+
+    @BeforeEach
+    public void load() {
+        parcel = TestParcels.player(0, 60, 0, 32, 32);
+        whitelisted = UUID.randomUUID();
+        parcel.getWhitelist().add(whitelisted);
+        ParcelRegistry.loadParcels(List.of(parcel, TestParcels.player(100, 60, 100, 16, 16)));
+    }
+
+    @AfterEach
+    public void clear() {
+        ParcelRegistry.clear();
+    }
+
+    @Test
+    public void ownerAndWhitelistHaveAccess() {
+        assertTrue(ParcelRegistry.hasAccess(10, 70, 10, parcel.getOwnerId()));
+        assertTrue(ParcelRegistry.hasAccess(10, 70, 10, whitelisted));
+        assertFalse(ParcelRegistry.hasAccess(10, 70, 10, UUID.randomUUID()));
+    }
+
+    @Test
+    public void anyoneHasAccessOutsideAParcel() {
+        UUID stranger = UUID.randomUUID();
+        assertTrue(ParcelRegistry.hasAccess(50, 70, 50, stranger));
+        // below the parcel
+        assertTrue(ParcelRegistry.hasAccess(10, 50, 10, stranger));
+        // the border is part of the parcel
+        assertFalse(ParcelRegistry.hasAccess(31, 91, 31, stranger));
+        assertTrue(ParcelRegistry.hasAccess(32, 70, 32, stranger));
+    }
+
+    @Test
+    public void cachedLookupFollowsThePlayer() {
+        UUID stranger = UUID.randomUUID();
+        assertFalse(ParcelRegistry.hasAccess(10, 70, 10, stranger));
+        assertTrue(ParcelRegistry.hasAccess(50, 70, 50, stranger));
+        assertFalse(ParcelRegistry.hasAccess(105, 70, 105, stranger));
+        assertFalse(ParcelRegistry.hasAccess(10, 70, 10, stranger));
+    }
+
+    /**
+     * the cached box is the whole parcel, unless a smaller parcel is inside it
+     */
+    @Test
+    public void cachedLookupCoversTheParcelOrTheChunk() {
+        UUID stranger = UUID.randomUUID();
+        assertFalse(ParcelRegistry.hasAccess(10, 70, 10, stranger));
+        // another chunk of the same parcel is a cache hit
+        assertFalse(ParcelRegistry.hasAccess(25, 70, 25, stranger));
+
+        ParcelRegistry.clear();
+        Parcel inner = TestParcels.player(20, 60, 20, 8, 8);
+        ParcelRegistry.loadParcels(List.of(parcel, inner));
+        assertTrue(ParcelRegistry.hasAccess(10, 70, 10, parcel.getOwnerId()));
+        assertFalse(ParcelRegistry.hasAccess(22, 62, 22, parcel.getOwnerId()));
+        assertTrue(ParcelRegistry.hasAccess(22, 62, 22, inner.getOwnerId()));
+        assertFalse(ParcelRegistry.hasAccess(10, 70, 10, inner.getOwnerId()));
+    }
+
+    @Test
+    public void cacheIsBounded() {
+        for (int i = 0; i < 2000; i++) {
+            ParcelRegistry.hasAccess(10, 70, 10, UUID.randomUUID());
+        }
+        assertTrue(ParcelRegistry.getCachedLookupCount() <= 512);
+
+        UUID stranger = UUID.randomUUID();
+        ParcelRegistry.hasAccess(10, 70, 10, stranger);
+        int count = ParcelRegistry.getCachedLookupCount();
+        ParcelRegistry.invalidateLookup(stranger);
+        assertEquals(count - 1, ParcelRegistry.getCachedLookupCount());
+    }
+
+    @Test
+    public void intersectsParcel() {
+        assertTrue(ParcelRegistry.intersectsParcel(0, 60, 0));
+        assertTrue(ParcelRegistry.intersectsParcel(31, 91, 31));
+        assertFalse(ParcelRegistry.intersectsParcel(32, 60, 0));
+        assertFalse(ParcelRegistry.intersectsParcel(10, 59, 10));
+        assertTrue(ParcelRegistry.intersectsParcel(110, 70, 110));
+    }
+
+    @Test
+    public void hasAccessDoesNotAllocate() {
+        UUID stranger = UUID.randomUUID();
+        UUID owner = parcel.getOwnerId();
+        assertEquals(0, allocatedPerCall(() -> {
+            // a hit denied, a hit granted and a miss
+            ParcelRegistry.hasAccess(10, 70, 10, stranger);
+            ParcelRegistry.hasAccess(10, 70, 10, owner);
+            ParcelRegistry.hasAccess(50, 70, 50, stranger);
+        }));
+    }
+
+    @Test
+    public void intersectsParcelDoesNotAllocate() {
+        assertEquals(0, allocatedPerCall(() -> {
+            ParcelRegistry.intersectsParcel(10, 70, 10);
+            ParcelRegistry.intersectsParcel(50, 70, 50);
+        }));
+    }
+
+    /**
+     * the bytes allocated by the current thread per call, after a warm-up (so the calls are compiled).
+     * @param call
+     * @return
+     */
+    private static long allocatedPerCall(Runnable call) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < WARM_UP; i++) {
+            call.run();
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < CALLS; i++) {
+            call.run();
+        }
+        return (threads.getCurrentThreadAllocatedBytes() - before) / CALLS;
+    }
+}